@@ -0,0 +1,98 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Tokenizing: reading and parsing one profile file into symbol ids, without
+ * merging it anywhere.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseBenchmark {
+
+	@Param({"1000", "10000"})
+	public int lines;
+
+	private File dir;
+	private ProfileFile makeDefaults;
+	private ProfileFile packageUse;
+	private ProfileFile packageMask;
+	private SymbolTable symbols = new SymbolTable(); // interning into one table, as a resolution does
+	private Diagnostics diagnostics = new Diagnostics(System.err); // every notice kept, as by default
+
+	@Setup
+	public void setUp () throws IOException {
+		this.dir = new File(ProfileTreeGenerator.generateTemporary(0, 1, 0, this.lines)).getParentFile();
+		String base = new File(this.dir, "base").getPath();
+		for (ProfileFile[] round: Profile.createFiles(base, false, false, "")) {
+			for (ProfileFile file: round) {
+				if (file.getFileName().equals("make.defaults")) {
+					this.makeDefaults = file;
+				} else if (file.getFileName().equals("package.use")) {
+					this.packageUse = file;
+				} else if (file.getFileName().equals("package.mask")) {
+					this.packageMask = file;
+				}
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown () {
+		ProfileTreeGenerator.delete(this.dir);
+	}
+
+	@Benchmark
+	public ParsedProfileFile makeDefaults () throws IOException {
+		return this.makeDefaults.parse(this.symbols, this.diagnostics);
+	}
+
+	@Benchmark
+	public ParsedProfileFile packageUse () throws IOException {
+		return this.packageUse.parse(this.symbols, this.diagnostics);
+	}
+
+	@Benchmark
+	public ParsedProfileFile packageMask () throws IOException {
+		return this.packageMask.parse(this.symbols, this.diagnostics);
+	}
+
+}
@@ -0,0 +1,93 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Prefix stripping: what every value goes through before it can be compared
+ * with the values it overrides.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrefixBenchmark {
+
+	private static final String[] PREFIXES = {"", "", "-", "+", "*", "-*", "*-", "+-"};
+
+	private String[] pieces = new String[1024];
+	private SymbolTable table = new SymbolTable();
+	private int[] symbols = new int[1024];
+	private FlagDictionary flags = new FlagDictionary(this.table);
+
+	@Setup
+	public void setUp () {
+		for (int p = 0; p < this.pieces.length; p++) {
+			this.pieces[p] = PREFIXES[p % PREFIXES.length] + "flag" + p;
+			this.symbols[p] = this.table.intern(this.pieces[p]);
+		}
+	}
+
+	@Benchmark
+	public void stripSymbols (Blackhole blackhole) {
+		for (int symbol: this.symbols) {
+			blackhole.consume(StackedValues.stripPrefixes(this.table, symbol, "-+*"));
+		}
+	}
+
+	@Benchmark
+	public void stripStrings (Blackhole blackhole) {
+		for (String piece: this.pieces) {
+			blackhole.consume(StackedValues.stripPrefixes(piece, "-+*"));
+		}
+	}
+
+	@Benchmark
+	public void onlyPrefixes (Blackhole blackhole) {
+		for (String piece: this.pieces) {
+			blackhole.consume(LinePieceRule.isOnlyPrefixes(piece));
+		}
+	}
+
+	@Benchmark
+	public void flagOf (Blackhole blackhole) {
+		for (int symbol: this.symbols) {
+			blackhole.consume(this.flags.getFlag(symbol));
+		}
+	}
+
+}
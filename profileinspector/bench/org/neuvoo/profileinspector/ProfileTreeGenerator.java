@@ -0,0 +1,314 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.util.Random;
+import java.util.Vector;
+import org.jargp.*;
+
+/**
+ * Writes synthetic profile trees, so that the size and shape of the largest
+ * overlays can be reproduced anywhere. A tree has one base profile, depth levels
+ * of fanOut profiles each, and a leaf inheriting from the whole top level.
+ *
+ * Every profile inherits from one profile of the level below, and from each of
+ * the others with probability sharing. At 0 every profile has one parent; at 1
+ * every profile inherits from the whole level below, and the base is reached
+ * fanOut^depth times.
+ *
+ * Each profile gets packageMaskLines lines of package.mask, packageUseLines of
+ * package.use, and useFlags values in the USE of its make.defaults, written
+ * continuation values to a line. About one value in five negates something the
+ * profile may have inherited. Everything is drawn from Randoms with the given
+ * seed, so the same settings always give the same tree, and trees that only
+ * differ in their file sizes have the same shape.
+ */
+class ProfileTreeGenerator {
+
+	private int depth = 3;
+	private int fanOut = 2;
+	private float sharing = 0.5f;
+	private int packageMaskLines = 1000;
+	private int packageUseLines = 1000;
+	private int useFlags = 500;
+	private int continuation = 8;
+	private int seed = 1;
+	private String output = "";
+
+	private Random random = null; // what goes in the files
+	private Random shape = null; // which parents are picked: apart, so that the shape does not change with the file sizes
+	private int lineCount = 0;
+	private long mergedLineCount = 0;
+
+	private static final ParameterDef[] ARG_DEFS = {
+		new StringDef('o', "output", "the directory to write the tree to"),
+		new IntDef('d', "depth", "levels between the base and the leaf"),
+		new IntDef('w', "fanOut", "profiles on each level"),
+		new FloatDef('s', "sharing", "chance of inheriting from each other profile of the level below", 0f, 1f),
+		new IntDef('m', "packageMaskLines", "package.mask lines per profile"),
+		new IntDef('u', "packageUseLines", "package.use lines per profile"),
+		new IntDef('f', "useFlags", "USE values in make.defaults per profile"),
+		new IntDef('c', "continuation", "USE values per line before continuing it, 0 for one line"),
+		new IntDef('r', "seed", "the random seed")
+	};
+
+	public static void main (String args[]) {
+		ProfileTreeGenerator generator = new ProfileTreeGenerator();
+		try {
+			ArgumentProcessor.processArgs(args, ARG_DEFS, generator);
+			if (generator.output.equals("")) {
+				throw new ArgumentErrorException ("an output directory is required");
+			}
+			String leaf = generator.generate(new File(generator.output));
+			System.out.println(leaf + ": " + generator.getLineCount() + " lines written, " + generator.getMergedLineCount() + " merged by a resolution");
+		} catch (ArgumentErrorException e) {
+			System.err.println("Error processing command-line arguments: " + e.getMessage());
+			System.err.println("Usage: java ProfileTreeGenerator -o <dir> [-d<depth>] [-w<fanOut>] [-s<sharing>]\n" +
+			                   "       [-m<packageMaskLines>] [-u<packageUseLines>] [-f<useFlags>] [-c<continuation>] [-r<seed>]\n" +
+			                   "Numbers follow their option directly, as in -d4 -s0.5");
+			System.exit(255);
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	public void setDepth (int depth) {
+		this.depth = depth;
+	}
+	public void setFanOut (int fanOut) {
+		this.fanOut = fanOut;
+	}
+	public void setSharing (float sharing) {
+		this.sharing = sharing;
+	}
+	public void setPackageMaskLines (int packageMaskLines) {
+		this.packageMaskLines = packageMaskLines;
+	}
+	public void setPackageUseLines (int packageUseLines) {
+		this.packageUseLines = packageUseLines;
+	}
+	public void setUseFlags (int useFlags) {
+		this.useFlags = useFlags;
+	}
+	public void setContinuation (int continuation) {
+		this.continuation = continuation;
+	}
+	public void setSeed (int seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * The lines written by the last generate(), in all files.
+	 */
+	public int getLineCount () {
+		return this.lineCount;
+	}
+
+	/**
+	 * The lines a resolution of the last generated leaf merges: the lines of
+	 * every profile, once for each time the profile is reached.
+	 */
+	public long getMergedLineCount () {
+		return this.mergedLineCount;
+	}
+
+	/**
+	 * Writes a tree into root, which should not exist yet, and returns the path
+	 * of its leaf.
+	 */
+	public String generate (File root) throws IOException {
+		this.random = new Random(this.seed);
+		this.shape = new Random(this.seed);
+		this.lineCount = 0;
+		this.mergedLineCount = 0;
+
+		// Level 0 is the base and level depth+1 the leaf
+		int levels = this.depth + 2;
+		String[][] names = new String[levels][];
+		int[][] lines = new int[levels][];
+		int[][][] parents = new int[levels][][];
+		for (int level = 0; level < levels; level++) {
+			int width = (level == 0 || level == levels - 1) ? 1 : this.fanOut;
+			names[level] = new String[width];
+			lines[level] = new int[width];
+			parents[level] = new int[width][];
+			for (int p = 0; p < width; p++) {
+				names[level][p] = (level == 0) ? "base" : (level == levels - 1) ? "leaf" : "l" + level + "p" + p;
+				parents[level][p] = (level == 0) ? new int[0] : this.pickParents(p, names[level - 1].length, level == levels - 1);
+				String[] parentPaths = new String[parents[level][p].length];
+				for (int parent = 0; parent < parentPaths.length; parent++) {
+					parentPaths[parent] = "../" + names[level - 1][parents[level][p][parent]];
+				}
+				lines[level][p] = this.writeProfile(new File(root, names[level][p]), parentPaths);
+				this.lineCount += lines[level][p];
+			}
+		}
+
+		// Count how often each profile is reached, from the leaf down
+		long[] reached = new long[]{1};
+		for (int level = levels - 1; level >= 0; level--) {
+			long[] reachedBelow = new long[(level > 0) ? names[level - 1].length : 0];
+			for (int p = 0; p < reached.length; p++) {
+				this.mergedLineCount += reached[p] * lines[level][p];
+				for (int parent: parents[level][p]) {
+					reachedBelow[parent] += reached[p];
+				}
+			}
+			reached = reachedBelow;
+		}
+		return new File(root, "leaf").getPath();
+	}
+
+	private int[] pickParents (int profile, int below, boolean all) {
+		Vector<Integer> picked = new Vector<Integer>();
+		for (int p = 0; p < below; p++) {
+			if (all || p == profile % below || this.shape.nextFloat() < this.sharing) {
+				picked.add(p);
+			}
+		}
+		int[] parents = new int[picked.size()];
+		for (int p = 0; p < parents.length; p++) {
+			parents[p] = picked.get(p);
+		}
+		return parents;
+	}
+
+	private int writeProfile (File dir, String[] parents) throws IOException {
+		dir.mkdirs();
+		int written = 0;
+		if (parents.length > 0) {
+			written += this.write(new File(dir, "parent"), parents);
+		}
+		written += this.write(new File(dir, "eapi"), new String[]{"0"});
+
+		String[] atoms = new String[this.packageMaskLines];
+		for (int l = 0; l < atoms.length; l++) {
+			atoms[l] = this.negation() + this.atom();
+		}
+		written += this.write(new File(dir, "package.mask"), atoms);
+
+		String[] uses = new String[this.packageUseLines];
+		for (int l = 0; l < uses.length; l++) {
+			uses[l] = this.atom() + " " + this.flag() + " " + this.negation() + this.flag() + " " + this.negation() + this.flag();
+		}
+		written += this.write(new File(dir, "package.use"), uses);
+
+		String[] flags = new String[Math.max(this.useFlags / 16, 1)];
+		for (int l = 0; l < flags.length; l++) {
+			flags[l] = this.negation() + this.flag();
+		}
+		written += this.write(new File(dir, "use.mask"), flags);
+
+		Vector<String> makeDefaults = new Vector<String>();
+		makeDefaults.add("# written by ProfileTreeGenerator");
+		StringBuilder use = new StringBuilder("USE=\"${USE}");
+		for (int v = 0; v < this.useFlags; v++) {
+			use.append(' ').append(this.negation()).append(this.flag());
+			if (this.continuation > 0 && v % this.continuation == this.continuation - 1 && v + 1 < this.useFlags) {
+				use.append(" \\");
+				makeDefaults.add(use.toString());
+				use.setLength(0);
+			}
+		}
+		use.append('"');
+		makeDefaults.add(use.toString());
+		makeDefaults.add("CFLAGS=\"-O2 -pipe\"");
+		makeDefaults.add("USE_EXPAND=\"VIDEO_CARDS INPUT_DEVICES\"");
+		written += this.write(new File(dir, "make.defaults"), makeDefaults.toArray(new String[makeDefaults.size()]));
+		return written;
+	}
+
+	private String negation () {
+		return (this.random.nextInt(5) == 0) ? "-" : "";
+	}
+
+	private String flag () {
+		return "flag" + this.random.nextInt(Math.max(this.useFlags * 2, 64));
+	}
+
+	private String atom () {
+		int packages = Math.max(Math.max(this.packageMaskLines, this.packageUseLines) * 2, 64);
+		int p = this.random.nextInt(packages);
+		return "cat-" + (p % 64) + "/pkg" + p;
+	}
+
+	private int write (File file, String[] lines) throws IOException {
+		BufferedWriter out = new BufferedWriter(new FileWriter(file));
+		try {
+			for (String line: lines) {
+				out.write(line);
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+		return lines.length;
+	}
+
+	/**
+	 * Writes a tree with lines lines in each list and USE into a new temporary
+	 * directory, and returns the path of its leaf.
+	 */
+	public static String generateTemporary (int depth, int fanOut, float sharing, int lines) throws IOException {
+		ProfileTreeGenerator generator = new ProfileTreeGenerator();
+		generator.setDepth(depth);
+		generator.setFanOut(fanOut);
+		generator.setSharing(sharing);
+		generator.setPackageMaskLines(lines);
+		generator.setPackageUseLines(lines);
+		generator.setUseFlags(lines);
+		return generator.generate(ProfileTreeGenerator.createTempDirectory("profileinspector-bench"));
+	}
+
+	/**
+	 * A new, empty temporary directory.
+	 */
+	public static File createTempDirectory (String prefix) throws IOException {
+		File dir = File.createTempFile(prefix, "");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	public static void delete (File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child: children) {
+				ProfileTreeGenerator.delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,105 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Rendering a resolved profile, as action i prints it, into a writer that only
+ * counts what it is given.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RenderBenchmark {
+
+	@Param({"1000", "10000"})
+	public int lines;
+
+	private File dir;
+	private Profile profile;
+
+	@Setup
+	public void setUp () throws IOException {
+		String leaf = ProfileTreeGenerator.generateTemporary(2, 2, 0.5f, this.lines);
+		this.dir = new File(leaf).getParentFile();
+		this.profile = new Profile(leaf, new ProfileEnvironment(new SymbolTable()), false, false, "");
+	}
+
+	@TearDown
+	public void tearDown () {
+		ProfileTreeGenerator.delete(this.dir);
+	}
+
+	@Benchmark
+	public long human () {
+		CountingWriter counter = new CountingWriter();
+		this.profile.writeHumanOutput(new PrintWriter(counter));
+		return counter.count;
+	}
+
+	@Benchmark
+	public long json () throws IOException {
+		CountingWriter counter = new CountingWriter();
+		new ProfileJsonWriter(new PrintWriter(counter)).write(this.profile);
+		return counter.count;
+	}
+
+	@Benchmark
+	public int humanString () {
+		return this.profile.getHumanOutput().length();
+	}
+
+	private static class CountingWriter extends Writer {
+		long count = 0;
+
+		public void write (char[] chars, int from, int length) {
+			this.count += length;
+		}
+		public void write (String string, int from, int length) {
+			this.count += length;
+		}
+		public void flush () {
+		}
+		public void close () {
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Resolving whole profile trees through the Profile entry point: once with the
+ * files parsed again on every resolution, as a single run of action i does, and
+ * once with the parsed files kept, as the daemon does, which leaves only the
+ * inheritance walk and the merging.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResolveBenchmark {
+
+	@Param({"2", "6"})
+	public int depth;
+
+	@Param({"1", "3"})
+	public int fanOut;
+
+	@Param({"200", "2000"})
+	public int lines;
+
+	private File dir;
+	private String leaf;
+	private ParsedFileCache parsedFiles;
+
+	@Setup
+	public void setUp () throws IOException {
+		this.leaf = ProfileTreeGenerator.generateTemporary(this.depth, this.fanOut, 0.5f, this.lines);
+		this.dir = new File(this.leaf).getParentFile();
+		this.parsedFiles = new ParsedFileCache(null, false, false, "");
+		new Profile(this.leaf, new ProfileEnvironment(this.parsedFiles.getSymbols()), false, false, "", this.parsedFiles);
+	}
+
+	@TearDown
+	public void tearDown () {
+		ProfileTreeGenerator.delete(this.dir);
+	}
+
+	@Benchmark
+	public Profile parseAndMerge () throws IOException {
+		return new Profile(this.leaf, new ProfileEnvironment(new SymbolTable()), false, false, "");
+	}
+
+	@Benchmark
+	public Profile mergeOnly () throws IOException {
+		return new Profile(this.leaf, new ProfileEnvironment(this.parsedFiles.getSymbols()), false, false, "", this.parsedFiles);
+	}
+
+}
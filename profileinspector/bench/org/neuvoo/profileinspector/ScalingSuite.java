@@ -0,0 +1,194 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Vector;
+import org.jargp.*;
+
+/**
+ * Resolves generated profile trees of increasing size through the Profile
+ * entry point, and fails when the time or peak heap grows faster than the
+ * number of lines merged to the power maxExponent. Resolution should be linear
+ * in the lines it merges, so anything worse is a performance cliff.
+ *
+ * There are three series: the files of a fixed tree growing, the tree growing
+ * deeper (with shared parents, so profiles are reached more and more often),
+ * and a make.defaults USE growing with every value on its own continued line.
+ * Each point is the fastest of a few resolutions, after a garbage collection.
+ */
+class ScalingSuite {
+
+	private int baseLines = 250;
+	private int steps = 5;
+	private int repeats = 5;
+	private int maxDepth = 6;
+	private float maxExponent = 1.3f;
+
+	private static final ParameterDef[] ARG_DEFS = {
+		new IntDef('l', "baseLines", "lines per file at the smallest size"),
+		new IntDef('n', "steps", "sizes in each series, each double the last"),
+		new IntDef('r', "repeats", "resolutions of each size, the fastest counts"),
+		new IntDef('d', "maxDepth", "depth of the deepest tree"),
+		new FloatDef('e', "maxExponent", "fail when growth is worse than n^maxExponent")
+	};
+
+	public static void main (String args[]) {
+		ScalingSuite suite = new ScalingSuite();
+		try {
+			ArgumentProcessor.processArgs(args, ARG_DEFS, suite);
+			System.exit(suite.run() ? 0 : 1);
+		} catch (ArgumentErrorException e) {
+			System.err.println("Error processing command-line arguments: " + e.getMessage());
+			System.err.println("Usage: java ScalingSuite [-l<baseLines>] [-n<steps>] [-r<repeats>] [-d<maxDepth>] [-e<maxExponent>]");
+			System.exit(255);
+		} catch (IOException e) {
+			System.err.println("Error: " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	public boolean run () throws IOException {
+		File root = ProfileTreeGenerator.createTempDirectory("profileinspector-scaling");
+		try {
+			ProfileTreeGenerator generator = this.newGenerator(this.baseLines);
+			String warmUp = generator.generate(new File(root, "warmup"));
+			for (int r = 0; r < 5; r++) {
+				new Profile(warmUp, new ProfileEnvironment(new SymbolTable()), false, false, "");
+			}
+
+			boolean passed = true;
+
+			System.out.println("Files growing: depth 3, fan-out 2, sharing 0.5");
+			Vector<double[]> points = new Vector<double[]>();
+			for (int step = 0; step < this.steps; step++) {
+				generator = this.newGenerator(this.baseLines << step);
+				points.add(this.measure(generator, new File(root, "size" + step)));
+			}
+			passed &= this.check(points);
+
+			System.out.println("Depth growing: " + this.baseLines + " lines per file, fan-out 2, sharing 0.5");
+			points = new Vector<double[]>();
+			for (int depth = 1; depth <= this.maxDepth; depth++) {
+				generator = this.newGenerator(this.baseLines);
+				generator.setDepth(depth);
+				points.add(this.measure(generator, new File(root, "depth" + depth)));
+			}
+			passed &= this.check(points);
+
+			System.out.println("Continued lines growing: one USE value per line, depth 1");
+			points = new Vector<double[]>();
+			for (int step = 0; step < this.steps; step++) {
+				generator = this.newGenerator(this.baseLines);
+				generator.setDepth(1);
+				generator.setUseFlags((this.baseLines * 4) << step);
+				generator.setContinuation(1);
+				points.add(this.measure(generator, new File(root, "continued" + step)));
+			}
+			passed &= this.check(points);
+
+			return passed;
+		} finally {
+			ProfileTreeGenerator.delete(root);
+		}
+	}
+
+	private ProfileTreeGenerator newGenerator (int lines) {
+		ProfileTreeGenerator generator = new ProfileTreeGenerator();
+		generator.setPackageMaskLines(lines);
+		generator.setPackageUseLines(lines);
+		generator.setUseFlags(lines);
+		return generator;
+	}
+
+	// Returns {merged lines, milliseconds, peak heap bytes}
+	private double[] measure (ProfileTreeGenerator generator, File root) throws IOException {
+		String leaf = generator.generate(root);
+		long bestTime = Long.MAX_VALUE;
+		long bestHeap = Long.MAX_VALUE;
+		for (int r = 0; r < this.repeats; r++) {
+			System.gc();
+			for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+				pool.resetPeakUsage();
+			}
+			long start = System.nanoTime();
+			new Profile(leaf, new ProfileEnvironment(new SymbolTable()), false, false, "");
+			bestTime = Math.min(bestTime, System.nanoTime() - start);
+			long heap = 0;
+			for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+				if (pool.getType() == MemoryType.HEAP) {
+					heap += pool.getPeakUsage().getUsed();
+				}
+			}
+			bestHeap = Math.min(bestHeap, heap);
+		}
+		ProfileTreeGenerator.delete(root);
+
+		double[] point = new double[]{generator.getMergedLineCount(), bestTime / 1e6, bestHeap};
+		System.out.println(String.format("  %12d merged lines %10.1f ms %10.1f MiB peak heap", (long)point[0], point[1], point[2] / (1024 * 1024)));
+		return point;
+	}
+
+	private boolean check (Vector<double[]> points) {
+		double timeExponent = ScalingSuite.exponent(points, 1);
+		double heapExponent = ScalingSuite.exponent(points, 2);
+		boolean passed = timeExponent <= this.maxExponent && heapExponent <= this.maxExponent;
+		System.out.println(String.format("  time grows as n^%.2f, peak heap as n^%.2f: %s", timeExponent, heapExponent,
+			passed ? "OK" : "FAILED, more than n^" + this.maxExponent));
+		System.out.println("");
+		return passed;
+	}
+
+	// The slope of the least-squares line through log(point[measure]) against log(merged lines)
+	private static double exponent (Vector<double[]> points, int measure) {
+		double sumX = 0, sumY = 0, sumXX = 0, sumXY = 0;
+		for (double[] point: points) {
+			double x = Math.log(point[0]);
+			double y = Math.log(Math.max(point[measure], 1e-3));
+			sumX += x;
+			sumY += y;
+			sumXX += x * x;
+			sumXY += x * y;
+		}
+		int n = points.size();
+		double denominator = n * sumXX - sumX * sumX;
+		if (n < 2 || denominator == 0) {
+			return 0;
+		}
+		return (n * sumXY - sumX * sumY) / denominator;
+	}
+
+}
@@ -0,0 +1,83 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Stacking: merging a list of values, a quarter of them negations, onto an
+ * inherited list of the same size. This is what ProfileFile.apply() does for
+ * every key a file sets, with and without the USE flag BitSets.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StackBenchmark {
+
+	@Param({"100", "1000", "10000"})
+	public int size;
+
+	@Param({"false", "true"})
+	public boolean flagSets;
+
+	private int[] inherited;
+	private int[] added;
+	private SymbolTable table;
+	private FlagDictionary flags;
+
+	@Setup
+	public void setUp () {
+		this.table = new SymbolTable();
+		this.inherited = new int[this.size];
+		this.added = new int[this.size];
+		for (int v = 0; v < this.size; v++) {
+			this.inherited[v] = this.table.intern("flag" + v);
+			String negation = (v % 4 == 0) ? "-" : "";
+			this.added[v] = this.table.intern(negation + "flag" + (v * 3));
+		}
+		this.flags = this.flagSets ? new FlagDictionary(this.table) : null;
+	}
+
+	@Benchmark
+	public int[] stack () {
+		StackedValues values = new StackedValues(this.table, this.inherited, FlagDictionary.PREFIXES, false, this.flags);
+		for (int value: this.added) {
+			values.add(value);
+		}
+		return values.toArray();
+	}
+
+}
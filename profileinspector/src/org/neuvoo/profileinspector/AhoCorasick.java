@@ -0,0 +1,141 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Arrays;
+
+/**
+ * An Aho-Corasick automaton over bytes, compiled all the way down to a DFA:
+ * every state has a transition for every byte, so scanning text costs one
+ * table lookup per byte however many patterns there are, and finds every
+ * occurrence of every pattern, overlapping ones included.
+ *
+ * The table takes 1K per state and there is at most one state per pattern
+ * byte, which is fine for the hundreds of atoms a search is made of.
+ */
+class AhoCorasick {
+
+	private final int[] transitions; // state * 256 + byte -> next state
+	private final int[][] matches; // state -> the patterns that end there, or null
+	private final int[] lengths;
+
+	public AhoCorasick (byte[][] patterns) {
+		int maxStates = 1;
+		for (int p = 0; p < patterns.length; p++) {
+			maxStates += patterns[p].length;
+		}
+		int[] transitions = new int[maxStates * 256];
+		Arrays.fill(transitions, -1);
+		int[][] matches = new int[maxStates][];
+		this.lengths = new int[patterns.length];
+
+		// the trie
+		int states = 1;
+		for (int p = 0; p < patterns.length; p++) {
+			int state = 0;
+			for (int b = 0; b < patterns[p].length; b++) {
+				int edge = (state << 8) | (patterns[p][b] & 0xff);
+				if (transitions[edge] < 0) {
+					transitions[edge] = states++;
+				}
+				state = transitions[edge];
+			}
+			matches[state] = AhoCorasick.append(matches[state], p);
+			this.lengths[p] = patterns[p].length;
+		}
+
+		// failure links, breadth first so a state's are known before its children's
+		int[] failures = new int[states];
+		int[] queue = new int[states];
+		int head = 0;
+		int tail = 0;
+		for (int b = 0; b < 256; b++) {
+			if (transitions[b] < 0) {
+				transitions[b] = 0;
+			} else {
+				queue[tail++] = transitions[b];
+			}
+		}
+		while (head < tail) {
+			int state = queue[head++];
+			int failure = failures[state];
+			for (int b = 0; b < 256; b++) {
+				int edge = (state << 8) | b;
+				int child = transitions[edge];
+				if (child < 0) {
+					transitions[edge] = transitions[(failure << 8) | b];
+				} else {
+					failures[child] = transitions[(failure << 8) | b];
+					int[] inherited = matches[failures[child]];
+					if (inherited != null) {
+						for (int m = 0; m < inherited.length; m++) {
+							matches[child] = AhoCorasick.append(matches[child], inherited[m]);
+						}
+					}
+					queue[tail++] = child;
+				}
+			}
+		}
+
+		this.transitions = (states == maxStates) ? transitions : Arrays.copyOf(transitions, states * 256);
+		this.matches = (states == maxStates) ? matches : Arrays.copyOf(matches, states);
+	}
+
+	public int getInitialState () {
+		return 0;
+	}
+
+	public int next (int state, byte b) {
+		return this.transitions[(state << 8) | (b & 0xff)];
+	}
+
+	/**
+	 * The patterns that end where the scan reached state, or null if none do.
+	 */
+	public int[] getMatches (int state) {
+		return this.matches[state];
+	}
+
+	public int getLength (int pattern) {
+		return this.lengths[pattern];
+	}
+
+	private static int[] append (int[] array, int value) {
+		if (array == null) {
+			return new int[] { value };
+		}
+		int[] appended = Arrays.copyOf(array, array.length + 1);
+		appended[array.length] = value;
+		return appended;
+	}
+
+}
@@ -0,0 +1,107 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.BitSet;
+
+/**
+ * One kind of problem found in one file, and on how many lines. Two reports
+ * are the same Diagnostic when they have the same code, path and detail; only
+ * the line numbers may differ. A file reached more than once is applied, and
+ * reports its problems, each time, so a line already counted is not counted
+ * again.
+ */
+class Diagnostic {
+
+	private final int code;
+	private final String path;
+	private final String detail; // may be null
+	private int firstLine;
+	private int lastLine;
+	private int count = 1;
+	private final BitSet lines = new BitSet(); // line + 1 of everything counted, so -1 (no line) fits
+
+	public Diagnostic (int code, String path, int line, String detail) {
+		this.code = code;
+		this.path = path;
+		this.detail = detail;
+		this.firstLine = line;
+		this.lastLine = line;
+		this.lines.set(line + 1);
+	}
+
+	public void repeat (int line) {
+		if (this.lines.get(line + 1)) {
+			return; // the same line again
+		}
+		this.lines.set(line + 1);
+		this.count++;
+		this.lastLine = line;
+	}
+
+	public int getCode () {
+		return this.code;
+	}
+	public String getPath () {
+		return this.path;
+	}
+	public String getDetail () {
+		return this.detail;
+	}
+	public int getFirstLine () {
+		return this.firstLine;
+	}
+	public int getLastLine () {
+		return this.lastLine;
+	}
+	public int getCount () {
+		return this.count;
+	}
+
+	public boolean equals (Object other) {
+		if (!(other instanceof Diagnostic)) {
+			return false;
+		}
+		Diagnostic diagnostic = (Diagnostic)other;
+		return this.code == diagnostic.code
+			&& (this.path == null ? diagnostic.path == null : this.path.equals(diagnostic.path))
+			&& (this.detail == null ? diagnostic.detail == null : this.detail.equals(diagnostic.detail));
+	}
+
+	public int hashCode () {
+		int hash = this.code;
+		hash = hash * 31 + (this.path == null ? 0 : this.path.hashCode());
+		hash = hash * 31 + (this.detail == null ? 0 : this.detail.hashCode());
+		return hash;
+	}
+
+}
@@ -0,0 +1,230 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+
+/**
+ * Collects the notices, warnings and errors of a resolution. A report is only
+ * a code, a path, a line number and sometimes a detail (the piece or variable
+ * it is about); the message is not put together until the report is printed,
+ * and reports below the threshold are dropped before that. Reports of the same
+ * problem in the same file are printed once, with a count of the other lines
+ * it was found on, in the order they were first made.
+ *
+ * Nothing is printed before flush(), except that the buffer is flushed by
+ * itself once it holds MAX_BUFFERED different diagnostics, so a long run
+ * prints them in batches instead of holding all of them.
+ */
+class Diagnostics {
+
+	public static final int SEVERITY_NOTICE = 1;
+	public static final int SEVERITY_WARNING = 2;
+	public static final int SEVERITY_ERROR = 3;
+	public static final int MAX_SEVERITY = SEVERITY_ERROR;
+
+	public static final int MAX_BUFFERED = 4096;
+
+	// Codes: indexes into SEVERITIES and MESSAGES. {path}, {line} and {detail} are filled in when printed.
+	public static final int FILE_MISSING = 0;
+	public static final int COMMENT_NOT_ALLOWED = 1;
+	public static final int CONTINUATION_NOT_ALLOWED = 2;
+	public static final int BLANK_NOT_ALLOWED = 3;
+	public static final int SEARCH_FOUND = 4;
+	public static final int NO_VARIABLE_NAME = 5;
+	public static final int UNQUOTED_VARIABLE = 6;
+	public static final int INVALID_VARIABLE_NAME = 7;
+	public static final int INVALID_VARIABLE_START = 8;
+	public static final int SPACES_IN_2D = 9;
+	public static final int NO_SPACES_IN_3D = 10;
+	public static final int PACKAGE_IN_BASH = 11;
+	public static final int INVALID_PREFIX = 12;
+	public static final int EXTRA_PREFIX = 13;
+	public static final int MISSING_PREFIX = 14;
+	public static final int NOT_NUMERIC = 15;
+	public static final int PREFIXED_KEY = 16;
+	public static final int VARIABLE_NOT_ALLOWED = 17;
+	public static final int PROFILE_MISSING = 18;
+	public static final int UNHANDLED_DATA = 19;
+	public static final int PROFILE_CYCLE = 20;
+	public static final int NOT_A_PACKAGE = 21;
+
+	private static final int[] SEVERITIES = {
+		SEVERITY_NOTICE, // FILE_MISSING
+		SEVERITY_NOTICE, // COMMENT_NOT_ALLOWED
+		SEVERITY_NOTICE, // CONTINUATION_NOT_ALLOWED
+		SEVERITY_WARNING, // BLANK_NOT_ALLOWED
+		SEVERITY_NOTICE, // SEARCH_FOUND
+		SEVERITY_ERROR, // NO_VARIABLE_NAME
+		SEVERITY_ERROR, // UNQUOTED_VARIABLE
+		SEVERITY_WARNING, // INVALID_VARIABLE_NAME
+		SEVERITY_WARNING, // INVALID_VARIABLE_START
+		SEVERITY_NOTICE, // SPACES_IN_2D
+		SEVERITY_NOTICE, // NO_SPACES_IN_3D
+		SEVERITY_WARNING, // PACKAGE_IN_BASH
+		SEVERITY_WARNING, // INVALID_PREFIX
+		SEVERITY_WARNING, // EXTRA_PREFIX
+		SEVERITY_WARNING, // MISSING_PREFIX
+		SEVERITY_WARNING, // NOT_NUMERIC
+		SEVERITY_WARNING, // PREFIXED_KEY
+		SEVERITY_WARNING, // VARIABLE_NOT_ALLOWED
+		SEVERITY_WARNING, // PROFILE_MISSING
+		SEVERITY_WARNING, // UNHANDLED_DATA
+		SEVERITY_ERROR, // PROFILE_CYCLE
+		SEVERITY_WARNING // NOT_A_PACKAGE
+	};
+
+	private static final String[] MESSAGES = {
+		"File {path} does not exist.",
+		"Notice: file {path} line {line}: possible comment where comment not allowed. Allowing it to be parsed by profile.",
+		"Notice: file {path} line {line}: possible line continuation where line continuation not allowed. Allowing it to be parsed by profile.",
+		"Warning: file {path} line {line}: blank line where blank is not allowed.",
+		"Notice: search string found in file {path} line {line}: {detail}",
+		"Error: in file {path} line {line}: equals sign in bad position or non-existant, which means the variable name couldn't be found. SKIPPING this line.",
+		"Error: in file {path} line {line}: variable data should begin and end with double quotes. SKIPPING this line.",
+		"Warning: in file {path} line {line}: variable name {detail} contains invalid characters.",
+		"Warning: in file {path} line {line}: variable name {detail} begins with an invalid character.",
+		"Notice: file {path} line {line}: possible syntax issue: there are spaces, indicating 3D data, in a 2D file. Allowing it to be parsed by profile as 2D anyway.",
+		"Notice: in file {path} line {line}: possible syntax issue: there are no spaces, indicating 2D data, in a 3D file. Allowing it to be parsed by profile as 3D anyway.",
+		"Warning: in file {path} line {line}: while this utility can handle package atoms in bash-like files, PMS has neither allowed nor disallowed this.",
+		"Warning: in file {path} line {line}: there is an invalid prefix in this piece (which we will ignore): {detail}",
+		"Warning: in file {path} line {line}: we desired a prefix, and found one, but now there appears to be yet another prefix (which will not be processed) in this piece: {detail}",
+		"Warning: in file {path} line {line}: it seems we desired a prefix, but there is none in this piece: {detail}",
+		"Warning: in file {path} line {line}: this piece is supposed to be numeric, but it has failed checks: {detail}",
+		"Warning: in file {path} line {line}: this piece has a prefix, but it is a key. Behavior for keys with prefixes is undefined in PMS, so we will ignore: {detail}",
+		"Warning: in file {path} line {line}: this piece looks like a variable, but this file does not allow variables: {detail}",
+		"Warning: profile at {path} doesn't exist!",
+		"Warning: unhandled data: {detail}",
+		"Error: profile at {path} inherits from a cycle of profiles that includes {detail}, so it cannot be resolved.",
+		"Warning: not a package: {detail}"
+	};
+
+	private PrintStream out = null;
+	private int threshold = SEVERITY_NOTICE;
+	private LinkedHashMap<Diagnostic,Diagnostic> buffered = new LinkedHashMap<Diagnostic,Diagnostic>();
+	private int reportCount = 0;
+
+	public Diagnostics (PrintStream out) {
+		this.out = out;
+	}
+
+	/**
+	 * Reports less severe than this are dropped.
+	 */
+	public synchronized void setThreshold (int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * The severity named by notice, warning or error, or -1.
+	 */
+	public static int parseSeverity (String name) {
+		if (name.equals("notice")) {
+			return SEVERITY_NOTICE;
+		} else if (name.equals("warning")) {
+			return SEVERITY_WARNING;
+		} else if (name.equals("error")) {
+			return SEVERITY_ERROR;
+		}
+		return -1;
+	}
+
+	public synchronized int getThreshold () {
+		return this.threshold;
+	}
+
+	public static boolean isCode (int code) {
+		return code >= 0 && code < SEVERITIES.length;
+	}
+
+	/**
+	 * Whether a report of code would be kept, so the caller can skip working
+	 * out its detail when it would not.
+	 */
+	public synchronized boolean isEnabled (int code) {
+		return SEVERITIES[code] >= this.threshold;
+	}
+
+	/**
+	 * line is -1 when the report is not about a line; detail may be null.
+	 */
+	public synchronized void report (int code, String path, int line, String detail) {
+		if (SEVERITIES[code] < this.threshold) {
+			return;
+		}
+		this.reportCount++;
+		Diagnostic diagnostic = new Diagnostic(code, path, line, detail);
+		Diagnostic existing = this.buffered.get(diagnostic);
+		if (existing != null) {
+			existing.repeat(line);
+			return;
+		}
+		if (this.buffered.size() >= MAX_BUFFERED) {
+			this.flush();
+		}
+		this.buffered.put(diagnostic, diagnostic);
+	}
+
+	/**
+	 * Reports kept since this was made, repeats included.
+	 */
+	public synchronized int getReportCount () {
+		return this.reportCount;
+	}
+
+	public synchronized void flush () {
+		for (Diagnostic diagnostic: this.buffered.keySet()) {
+			this.out.println(Diagnostics.format(diagnostic));
+		}
+		this.buffered.clear();
+		this.out.flush();
+	}
+
+	public static String format (Diagnostic diagnostic) {
+		String message = MESSAGES[diagnostic.getCode()];
+		message = message.replace("{path}", String.valueOf(diagnostic.getPath()));
+		message = message.replace("{line}", String.valueOf(diagnostic.getFirstLine()));
+		if (diagnostic.getDetail() != null) {
+			message = message.replace("{detail}", diagnostic.getDetail());
+		}
+		if (diagnostic.getCount() > 1) {
+			message += " (" + (diagnostic.getCount() - 1) + " more like this";
+			if (diagnostic.getLastLine() != diagnostic.getFirstLine()) {
+				message += ", the last on line " + diagnostic.getLastLine();
+			}
+			message += ")";
+		}
+		return message;
+	}
+
+}
@@ -0,0 +1,153 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.util.BitSet;
+import java.util.Vector;
+
+/**
+ * Action u: the USE flags a resolved profile leaves enabled for each of a list
+ * of packages. make.defaults USE, use.force and use.mask are turned into flag
+ * sets once; for each package only the package.use, package.use.force and
+ * package.use.mask entries that PackageIndex finds for it are stacked on top.
+ * Forced flags are enabled, then masked ones disabled. The profile has to be
+ * resolved keeping - prefixes, or a -flag in a package.use* entry is gone
+ * before it can turn off a flag set for the whole profile.
+ *
+ * Packages are given as category/name, category/name-version or
+ * =category/name-version, each optionally followed by :slot. Entries that ask
+ * for a version or slot only apply when the package gives one that matches.
+ */
+class EffectiveUse {
+
+	private static final int USE_KEY = SymbolTable.USE;
+
+	private SymbolTable symbols = null;
+	private FlagDictionary flags = null;
+	private PackageIndex packageIndex = null;
+	private BitSet enabled = null;
+	private BitSet forced = null;
+	private BitSet masked = null;
+	private String profileFlags = null; // the answer for any package no entry applies to
+
+	public EffectiveUse (Profile profile) {
+		ProfileEnvironment environment = profile.getEnvironment();
+		this.symbols = environment.getSymbols();
+		this.flags = environment.getFlagDictionary();
+		this.packageIndex = new PackageIndex(profile.getFiles(), environment);
+		this.enabled = this.flags.toFlagSet(environment.getValueIds("make.defaults", USE_KEY));
+		this.forced = this.flags.toFlagSet(environment.getValueIds("use.force", ProfileFile.LIST_KEY));
+		this.masked = this.flags.toFlagSet(environment.getValueIds("use.mask", ProfileFile.LIST_KEY));
+		this.profileFlags = this.toString(FlagDictionary.applyForceAndMask(this.enabled, this.forced, this.masked));
+	}
+
+	/**
+	 * The package followed by its enabled flags, or null if it can't be parsed.
+	 */
+	public String query (String text) {
+		PackageAtom atom = PackageAtom.parse(text);
+		if (atom == null) {
+			atom = PackageAtom.parse("=" + text); // category/name-version
+		}
+		if (atom == null || atom.hasWildcard() || !(atom.getOperator().equals("") || atom.getOperator().equals("="))) {
+			return null;
+		}
+
+		BitSet enabled = this.enabled;
+		BitSet forced = this.forced;
+		BitSet masked = this.masked;
+		boolean changed = false;
+		Vector<PackageEntry> entries = this.packageIndex.getEntries(atom.getCategoryAndName());
+		for (PackageEntry entry: entries) {
+			if (!entry.getAtom().matches(atom.getVersion(), atom.getSlot())) {
+				continue;
+			}
+			if (!changed) { // the profile-wide sets are shared, so copy them first
+				enabled = (BitSet)enabled.clone();
+				forced = (BitSet)forced.clone();
+				masked = (BitSet)masked.clone();
+				changed = true;
+			}
+			String fileName = entry.getFileName();
+			if (fileName.equals("package.use")) {
+				this.flags.stack(enabled, entry.getValues());
+			} else if (fileName.equals("package.use.force")) {
+				this.flags.stack(forced, entry.getValues());
+			} else if (fileName.equals("package.use.mask")) {
+				this.flags.stack(masked, entry.getValues());
+			}
+		}
+		if (!changed) {
+			return text + this.profileFlags;
+		}
+		return text + this.toString(FlagDictionary.applyForceAndMask(enabled, forced, masked));
+	}
+
+	/**
+	 * Answers every package in the list, one per line, printing each answer as
+	 * soon as it is known. Lines that are not packages are reported to
+	 * diagnostics, which is flushed along with out.
+	 */
+	public void queryAll (BufferedReader packages, PrintWriter out, Diagnostics diagnostics) throws IOException {
+		String line;
+		int lineNum = 0;
+		while ((line = packages.readLine()) != null) {
+			lineNum++;
+			line = line.trim();
+			if (line.equals("") || line.startsWith("#")) {
+				continue;
+			}
+			String answer = this.query(line);
+			if (answer == null) {
+				diagnostics.report(Diagnostics.NOT_A_PACKAGE, null, lineNum, line);
+			} else {
+				out.println(answer);
+			}
+			if (!packages.ready()) {
+				out.flush(); // someone may be waiting on the answers so far
+				diagnostics.flush();
+			}
+		}
+		out.flush();
+		diagnostics.flush();
+	}
+
+	private String toString (BitSet flagSet) {
+		StringBuilder flags = new StringBuilder();
+		for (int flag = flagSet.nextSetBit(0); flag >= 0; flag = flagSet.nextSetBit(flag + 1)) {
+			flags.append(' ').append(this.symbols.get(this.flags.getFlagSymbol(flag)));
+		}
+		return flags.toString();
+	}
+
+}
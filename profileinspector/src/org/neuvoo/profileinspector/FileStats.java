@@ -0,0 +1,111 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+/**
+ * What one profile file cost during a resolution: reading and parsing it (once,
+ * however often it is reached) and merging it (every time it is reached).
+ * Parsing may happen on prefetch threads, so everything is synchronized.
+ */
+class FileStats {
+
+	private final String path;
+
+	private int parses = 0;
+	private long parseNanos = 0;
+	private long parseCpuNanos = 0;
+	private long bytes = 0;
+	private int lines = 0;
+	private int tokens = 0;
+
+	private int merges = 0; // times the file was applied
+	private long mergeNanos = 0;
+	private long mergeCpuNanos = 0;
+	private long values = 0; // values stacked, over every merge
+	private long diagnostics = 0; // notices and warnings printed, over every merge
+
+	public FileStats (String path) {
+		this.path = path;
+	}
+
+	public synchronized void addParse (ParsedProfileFile parsed, long nanos, long cpuNanos) {
+		this.parses++;
+		this.parseNanos += nanos;
+		this.parseCpuNanos += cpuNanos;
+		this.bytes += parsed.getByteCount();
+		this.lines += parsed.getLineCount();
+		this.tokens += parsed.getTokenCount();
+	}
+
+	public synchronized void addMerge (long nanos, long cpuNanos, int values, int diagnostics) {
+		this.merges++;
+		this.mergeNanos += nanos;
+		this.mergeCpuNanos += cpuNanos;
+		this.values += values;
+		this.diagnostics += diagnostics;
+	}
+
+	public String getPath () {
+		return this.path;
+	}
+	public synchronized long getNanos () {
+		return this.parseNanos + this.mergeNanos;
+	}
+	public synchronized long getCpuNanos () {
+		return this.parseCpuNanos + this.mergeCpuNanos;
+	}
+	public synchronized long getParseNanos () {
+		return this.parseNanos;
+	}
+	public synchronized long getMergeNanos () {
+		return this.mergeNanos;
+	}
+	public synchronized long getBytes () {
+		return this.bytes;
+	}
+	public synchronized int getLines () {
+		return this.lines;
+	}
+	public synchronized int getTokens () {
+		return this.tokens;
+	}
+	public synchronized int getMerges () {
+		return this.merges;
+	}
+	public synchronized long getValues () {
+		return this.values;
+	}
+	public synchronized long getDiagnostics () {
+		return this.diagnostics;
+	}
+
+}
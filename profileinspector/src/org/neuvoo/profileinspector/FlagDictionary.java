@@ -0,0 +1,136 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Numbers the USE flags seen during one resolution densely from 0, so sets of
+ * them fit in small BitSets. Every value (e.g. "-doc") gets an index of its
+ * own, and is also mapped to the flag it names once its - prefix is stripped
+ * ("doc"). Both are looked up by SymbolTable id through plain arrays.
+ *
+ * Not thread-safe; a ProfileEnvironment is only merged into by one thread.
+ */
+class FlagDictionary {
+
+	public static final String PREFIXES = "-"; // the only prefix USE flag lists accept
+
+	private SymbolTable symbols = null;
+	private int[] valueOfSymbol = new int[0]; // symbol id -> value index + 1
+	private int[] flagOfSymbol = new int[0]; // symbol id -> flag index + 1
+	private int[] flagSymbols = new int[64]; // flag index -> symbol id of the unprefixed flag
+	private int valueCount = 0;
+	private int flagCount = 0;
+
+	public FlagDictionary (SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	public int getValue (int symbol) {
+		this.ensureCapacity(symbol);
+		if (this.valueOfSymbol[symbol] == 0) {
+			this.valueOfSymbol[symbol] = ++this.valueCount;
+		}
+		return this.valueOfSymbol[symbol] - 1;
+	}
+
+	public int getFlag (int symbol) {
+		this.ensureCapacity(symbol);
+		if (this.flagOfSymbol[symbol] == 0) {
+			int flagSymbol = StackedValues.stripPrefixes(this.symbols, symbol, PREFIXES);
+			this.ensureCapacity(flagSymbol);
+			if (this.flagOfSymbol[flagSymbol] == 0) {
+				if (this.flagCount == this.flagSymbols.length) {
+					this.flagSymbols = Arrays.copyOf(this.flagSymbols, this.flagCount * 2);
+				}
+				this.flagSymbols[this.flagCount] = flagSymbol;
+				this.flagOfSymbol[flagSymbol] = ++this.flagCount;
+			}
+			this.flagOfSymbol[symbol] = this.flagOfSymbol[flagSymbol];
+		}
+		return this.flagOfSymbol[symbol] - 1;
+	}
+
+	public boolean isNegation (int symbol) {
+		return this.symbols.get(symbol).startsWith("-");
+	}
+
+	public int getFlagSymbol (int flag) {
+		return this.flagSymbols[flag];
+	}
+
+	public int getFlagCount () {
+		return this.flagCount;
+	}
+
+	/**
+	 * Stacks a list of values into the set of flags it leaves enabled: a flag
+	 * ORs its bit in, a -flag clears it again.
+	 */
+	public BitSet toFlagSet (int[] values) {
+		BitSet flags = new BitSet(this.flagCount);
+		this.stack(flags, values);
+		return flags;
+	}
+
+	public void stack (BitSet flags, int[] values) {
+		for (int value: values) {
+			if (this.isNegation(value)) {
+				flags.clear(this.getFlag(value));
+			} else {
+				flags.set(this.getFlag(value));
+			}
+		}
+	}
+
+	/**
+	 * The flags left enabled once forced flags are turned on and masked flags
+	 * off; a flag that is both stays off. None of the sets are changed.
+	 */
+	public static BitSet applyForceAndMask (BitSet enabled, BitSet forced, BitSet masked) {
+		BitSet effective = (BitSet)enabled.clone();
+		effective.or(forced);
+		effective.andNot(masked);
+		return effective;
+	}
+
+	private void ensureCapacity (int symbol) {
+		if (symbol >= this.valueOfSymbol.length) {
+			int length = Math.max(symbol + 1, Math.max(this.symbols.size(), this.valueOfSymbol.length * 2));
+			this.valueOfSymbol = Arrays.copyOf(this.valueOfSymbol, length);
+			this.flagOfSymbol = Arrays.copyOf(this.flagOfSymbol, length);
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which profiles each profile of one resolution inherits from, by canonical
+ * path. Profile records a profile once it has read its parent file; the
+ * profiles of a tree are resolved concurrently, so recording and reading can
+ * happen from any thread.
+ */
+class InheritanceGraph {
+
+	private ConcurrentHashMap<String,String[]> parents = new ConcurrentHashMap<String,String[]>(); // canonical path -> canonical parents, in order
+
+	public void setParents (String canonicalPath, Collection<String> canonicalParents) {
+		this.parents.put(canonicalPath, canonicalParents.toArray(new String[canonicalParents.size()]));
+	}
+
+	/**
+	 * The parents of the profile at canonicalPath, or null if it has not been
+	 * recorded.
+	 */
+	public String[] getParents (String canonicalPath) {
+		return this.parents.get(canonicalPath);
+	}
+
+	/**
+	 * The profile at canonicalPath and everything it inherits from that has
+	 * been recorded, each once, nearest first.
+	 */
+	public Vector<String> getAncestors (String canonicalPath) {
+		Vector<String> ancestors = new Vector<String>();
+		HashSet<String> seen = new HashSet<String>();
+		ArrayDeque<String> pending = new ArrayDeque<String>();
+		seen.add(canonicalPath);
+		pending.add(canonicalPath);
+		while (!pending.isEmpty()) {
+			String path = pending.remove();
+			ancestors.add(path);
+			String[] pathParents = this.parents.get(path);
+			if (pathParents == null) {
+				continue;
+			}
+			for (String parent: pathParents) {
+				if (seen.add(parent)) {
+					pending.add(parent);
+				}
+			}
+		}
+		return ancestors;
+	}
+
+}
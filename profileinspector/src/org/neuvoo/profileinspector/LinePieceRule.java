@@ -0,0 +1,159 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+/**
+ * One ProfileFile lineRule (a pair of LINEPIECE_PREFIX_* and LINEPIECE_TYPE_*
+ * numbers), decoded once when the ProfileFile is constructed instead of for
+ * every piece of every line. The accepted prefixes are kept both as a string
+ * (for merging values) and as a table indexed by char, so stripping a prefix is
+ * a plain scan over the piece.
+ */
+class LinePieceRule {
+
+	private static final boolean[] ANY_PREFIX = LinePieceRule.createPrefixTable(ProfileFile.LINEPIECE_PREFIX_ALL);
+
+	private boolean prefixCanIgnore = false;
+	private boolean prefixSpecialOnly = false;
+	private String prefixes = "";
+	private boolean[] prefixTable = null;
+	private int type = ProfileFile.LINEPIECE_TYPE_STRING;
+
+	public LinePieceRule (String path, int linePiece, int fileType, int[] lineRule) {
+		int prefixRule = lineRule[0];
+		while (prefixRule > 0) {
+			if (prefixRule >= ProfileFile.LINEPIECE_PREFIX_SPECIAL_ONLY) {
+				this.prefixSpecialOnly = true;
+				prefixRule -= ProfileFile.LINEPIECE_PREFIX_SPECIAL_ONLY;
+			} else if (prefixRule >= ProfileFile.LINEPIECE_PREFIX_ASTERIK) {
+				this.prefixes += "*";
+				prefixRule -= ProfileFile.LINEPIECE_PREFIX_ASTERIK;
+			} else if (prefixRule >= ProfileFile.LINEPIECE_PREFIX_PLUS) {
+				this.prefixes += "+";
+				prefixRule -= ProfileFile.LINEPIECE_PREFIX_PLUS;
+			} else if (prefixRule >= ProfileFile.LINEPIECE_PREFIX_MINUS) {
+				this.prefixes += "-";
+				prefixRule -= ProfileFile.LINEPIECE_PREFIX_MINUS;
+			} else if (prefixRule >= ProfileFile.LINEPIECE_PREFIX_NONE) {
+				this.prefixCanIgnore = true;
+				prefixRule -= ProfileFile.LINEPIECE_PREFIX_NONE;
+			} else {
+				throw new IllegalArgumentException ("For path " + path + ", line part #" + linePiece + " has a bad rule number for allowed prefixes: " + prefixRule);
+			}
+		}
+		// We can't have conflicting rules. :)
+		if (!this.prefixCanIgnore && this.prefixes.equals("")) {
+			throw new IllegalArgumentException ("For path " + path + ", line part #" + linePiece + " requests to not ignore prefixes but doesn't say what prefixes are acceptable.");
+		}
+		this.prefixTable = LinePieceRule.createPrefixTable(this.prefixes);
+
+		switch (lineRule[1]) {
+			case ProfileFile.LINEPIECE_TYPE_NUMBER:
+				if (fileType == ProfileFile.TYPE_KEYVAL_BASH && linePiece == 0) {
+					throw new IllegalArgumentException ("For path " + path + ": when using TYPE_KEYVAL_BASH, cannot use LINEPIECE_TYPE_NUMBER for key type");
+				}
+				this.type = ProfileFile.LINEPIECE_TYPE_NUMBER;
+				break;
+			case ProfileFile.LINEPIECE_TYPE_STRING:
+				this.type = ProfileFile.LINEPIECE_TYPE_STRING;
+				break;
+			case ProfileFile.LINEPIECE_TYPE_PACKAGE:
+				this.type = ProfileFile.LINEPIECE_TYPE_PACKAGE;
+				break;
+			case ProfileFile.LINEPIECE_TYPE_FLAG:
+				this.type = ProfileFile.LINEPIECE_TYPE_FLAG;
+				break;
+			default:
+				throw new IllegalArgumentException ("For path " + path + ", line part #" + linePiece + " has a bad rule number for piece type: " + lineRule[1]);
+		}
+	}
+
+	private static boolean[] createPrefixTable (String prefixes) {
+		boolean[] table = new boolean[128];
+		for (int i = 0; i < prefixes.length(); i++) {
+			table[prefixes.charAt(i)] = true;
+		}
+		return table;
+	}
+
+	public boolean canIgnorePrefix () {
+		return this.prefixCanIgnore;
+	}
+
+	public boolean isPrefixSpecialOnly () {
+		return this.prefixSpecialOnly;
+	}
+
+	public String getPrefixes () {
+		return this.prefixes;
+	}
+
+	public int getType () {
+		return this.type;
+	}
+
+	/**
+	 * Length of the run of accepted prefix chars at the start of piece.
+	 */
+	public int getPrefixLength (String piece) {
+		int length = 0;
+		while (length < piece.length() && LinePieceRule.isIn(this.prefixTable, piece.charAt(length))) {
+			length++;
+		}
+		return length;
+	}
+
+	public static boolean isAnyPrefix (char c) {
+		return LinePieceRule.isIn(ANY_PREFIX, c);
+	}
+
+	/**
+	 * Whether piece is made up only of chars from LINEPIECE_PREFIX_ALL (and is
+	 * not empty).
+	 */
+	public static boolean isOnlyPrefixes (String piece) {
+		if (piece.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < piece.length(); i++) {
+			if (!LinePieceRule.isAnyPrefix(piece.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isIn (boolean[] table, char c) {
+		return c < table.length && table[c];
+	}
+
+}
@@ -0,0 +1,166 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A package atom split into its parts (PMS 8.3): the version operator, the
+ * category, the package name, the version with its optional * wildcard, the
+ * slot and any USE dependencies. Atoms are parsed at most once per SymbolTable
+ * id, and kept by that SymbolTable for as long as it lives; they are shared
+ * afterwards, so they are immutable.
+ *
+ * Anything that is not a valid atom parses to null.
+ */
+class PackageAtom {
+
+	// PMS 8.3.1: operator, then category/name, then a version only if there was an operator
+	private static final Pattern ATOM = Pattern.compile("(<=|>=|<|>|=|~)?([A-Za-z0-9_][A-Za-z0-9+_.-]*)/([A-Za-z0-9_][A-Za-z0-9+_-]*?)(?:-([0-9]+(?:\\.[0-9]+)*[a-z]?(?:_(?:alpha|beta|pre|rc|p)[0-9]*)*(?:-r[0-9]+)?)(\\*)?)?(?::([A-Za-z0-9+_.-]+(?:/[A-Za-z0-9+_.-]+)?))?(?:\\[([^\\]]*)\\])?");
+
+	private static final PackageAtom INVALID = new PackageAtom("", "", "", "", null, false, null, null);
+
+	private final String atom;
+	private final String operator;
+	private final String category;
+	private final String name;
+	private final String version;
+	private final boolean wildcard;
+	private final String slot;
+	private final String useDependencies;
+
+	private PackageAtom (String atom, String operator, String category, String name, String version, boolean wildcard, String slot, String useDependencies) {
+		this.atom = atom;
+		this.operator = operator;
+		this.category = category;
+		this.name = name;
+		this.version = version;
+		this.wildcard = wildcard;
+		this.slot = slot;
+		this.useDependencies = useDependencies;
+	}
+
+	/**
+	 * The atom in a profile list value, ignoring the list's own prefixes
+	 * (-, and * in packages).
+	 */
+	public static PackageAtom get (SymbolTable symbols, int symbol) {
+		ConcurrentHashMap<Integer,PackageAtom> parsed = symbols.getAtoms();
+		PackageAtom atom = parsed.get(symbol);
+		if (atom == null) {
+			atom = PackageAtom.parse(StackedValues.stripPrefixes(symbols.get(symbol), "*-"));
+			parsed.putIfAbsent(symbol, (atom != null) ? atom : INVALID);
+		}
+		return (atom != INVALID) ? atom : null;
+	}
+
+	public static PackageAtom parse (String atom) {
+		Matcher matcher = ATOM.matcher(atom);
+		if (!matcher.matches()) {
+			return null;
+		}
+		String operator = (matcher.group(1) != null) ? matcher.group(1) : "";
+		String version = matcher.group(4);
+		boolean wildcard = matcher.group(5) != null;
+		if (operator.equals("") != (version == null)) { // PMS 8.3.1: a version needs an operator, and an operator needs a version
+			return null;
+		}
+		if (wildcard && !operator.equals("=")) { // PMS 8.3.1: only = takes a wildcard
+			return null;
+		}
+		return new PackageAtom(atom, operator, matcher.group(2), matcher.group(3), version, wildcard, matcher.group(6), matcher.group(7));
+	}
+
+	/**
+	 * Whether this atom applies to a package of its category/name with the
+	 * given version and slot, either of which may be null when unknown. An
+	 * atom that asks for a version or slot does not apply when it is unknown.
+	 */
+	public boolean matches (String version, String slot) {
+		if (this.slot != null && (slot == null || !(slot.equals(this.slot) || slot.startsWith(this.slot + "/")))) {
+			return false;
+		}
+		if (this.version == null) {
+			return true;
+		} else if (version == null) {
+			return false;
+		}
+		if (this.operator.equals("=") && this.wildcard) {
+			return version.startsWith(this.version);
+		} else if (this.operator.equals("~")) {
+			return PackageVersion.compare(PackageVersion.stripRevision(version), PackageVersion.stripRevision(this.version)) == 0;
+		}
+		int comparison = PackageVersion.compare(version, this.version);
+		if (this.operator.equals("=")) {
+			return comparison == 0;
+		} else if (this.operator.equals("<")) {
+			return comparison < 0;
+		} else if (this.operator.equals("<=")) {
+			return comparison <= 0;
+		} else if (this.operator.equals(">")) {
+			return comparison > 0;
+		} else { // >=
+			return comparison >= 0;
+		}
+	}
+
+	public String getAtom () {
+		return this.atom;
+	}
+	public String getOperator () {
+		return this.operator;
+	}
+	public String getCategory () {
+		return this.category;
+	}
+	public String getName () {
+		return this.name;
+	}
+	public String getCategoryAndName () {
+		return this.category + "/" + this.name;
+	}
+	public String getVersion () {
+		return this.version;
+	}
+	public boolean hasWildcard () {
+		return this.wildcard;
+	}
+	public String getSlot () {
+		return this.slot;
+	}
+	public String getUseDependencies () {
+		return this.useDependencies;
+	}
+
+}
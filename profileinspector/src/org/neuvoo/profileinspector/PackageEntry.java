@@ -0,0 +1,81 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+/**
+ * One line of a resolved package list or package-keyed category that names a
+ * package: the category (file) it is in, its atom and, for files such as
+ * package.use, the values given for that atom.
+ */
+class PackageEntry {
+
+	private final String fileName;
+	private final int symbol; // the atom as written, prefixes included
+	private final PackageAtom atom;
+	private final int[] values; // null for 2D files
+
+	public PackageEntry (String fileName, int symbol, PackageAtom atom, int[] values) {
+		this.fileName = fileName;
+		this.symbol = symbol;
+		this.atom = atom;
+		this.values = values;
+	}
+
+	public String getFileName () {
+		return this.fileName;
+	}
+	public int getSymbol () {
+		return this.symbol;
+	}
+	public PackageAtom getAtom () {
+		return this.atom;
+	}
+	public int[] getValues () {
+		return this.values;
+	}
+
+	/**
+	 * The file name, the atom and its values, separated by spaces. symbols is
+	 * the table of the environment the entry came from.
+	 */
+	public String toLine (SymbolTable symbols) {
+		StringBuilder line = new StringBuilder(this.fileName);
+		line.append(' ').append(symbols.get(this.symbol));
+		if (this.values != null) {
+			for (int value: this.values) {
+				line.append(' ').append(symbols.get(value));
+			}
+		}
+		return line.toString();
+	}
+
+}
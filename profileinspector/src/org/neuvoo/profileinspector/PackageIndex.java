@@ -0,0 +1,119 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * The entries of a resolved profile that name packages, looked up by
+ * category/name, so finding what applies to one package doesn't mean walking
+ * every key of every category. Built once from a finished ProfileEnvironment
+ * and not changed afterwards.
+ *
+ * 2D files whose values are atoms (packages, package.mask, package.provided)
+ * are indexed by value; 3D files whose keys are atoms (package.use*,
+ * virtuals) by key. Values that aren't valid atoms are left out.
+ */
+class PackageIndex {
+
+	private HashMap<String,Vector<PackageEntry>> entries = new HashMap<String,Vector<PackageEntry>>(); // category/name -> entries, in file order
+	private int skipped = 0;
+
+	public PackageIndex (ProfileFile[][] files, ProfileEnvironment environment) {
+		for (ProfileFile[] round: files) {
+			for (ProfileFile file: round) {
+				if (file.getPieceType(0) != ProfileFile.LINEPIECE_TYPE_PACKAGE) {
+					continue;
+				}
+				String fileName = file.getFileName();
+				if (file.getType() == ProfileFile.TYPE_2D) {
+					for (int value: environment.getValueIds(fileName, ProfileFile.LIST_KEY)) {
+						this.add(new PackageEntry(fileName, value, PackageAtom.get(environment.getSymbols(), value), null));
+					}
+				} else if (file.getType() == ProfileFile.TYPE_3D) {
+					for (Map.Entry<Integer,int[]> key: environment.getCategoryIds(fileName).entrySet()) {
+						this.add(new PackageEntry(fileName, key.getKey(), PackageAtom.get(environment.getSymbols(), key.getKey()), key.getValue()));
+					}
+				}
+			}
+		}
+	}
+
+	private void add (PackageEntry entry) {
+		if (entry.getAtom() == null) {
+			this.skipped++;
+			return;
+		}
+		String categoryAndName = entry.getAtom().getCategoryAndName();
+		Vector<PackageEntry> packageEntries = this.entries.get(categoryAndName);
+		if (packageEntries == null) {
+			packageEntries = new Vector<PackageEntry>(2);
+			this.entries.put(categoryAndName, packageEntries);
+		}
+		packageEntries.add(entry);
+	}
+
+	/**
+	 * Everything that names category/name, in the order the files are merged.
+	 */
+	public Vector<PackageEntry> getEntries (String categoryAndName) {
+		Vector<PackageEntry> packageEntries = this.entries.get(categoryAndName);
+		if (packageEntries == null) {
+			return new Vector<PackageEntry>();
+		}
+		return new Vector<PackageEntry>(packageEntries);
+	}
+
+	public Vector<PackageEntry> getEntries (String categoryAndName, String fileName) {
+		Vector<PackageEntry> fileEntries = new Vector<PackageEntry>();
+		Vector<PackageEntry> packageEntries = this.entries.get(categoryAndName);
+		if (packageEntries != null) {
+			for (PackageEntry entry: packageEntries) {
+				if (entry.getFileName().equals(fileName)) {
+					fileEntries.add(entry);
+				}
+			}
+		}
+		return fileEntries;
+	}
+
+	public int getPackageCount () {
+		return this.entries.size();
+	}
+
+	public int getSkippedCount () {
+		return this.skipped;
+	}
+
+}
@@ -0,0 +1,154 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Package version comparison, as in PMS 3.3.
+ */
+class PackageVersion {
+
+	private static final Pattern VERSION = Pattern.compile("([0-9]+(?:\\.[0-9]+)*)([a-z]?)((?:_(?:alpha|beta|pre|rc|p)[0-9]*)*)(?:-r([0-9]+))?");
+	private static final Pattern SUFFIX = Pattern.compile("_(alpha|beta|pre|rc|p)([0-9]*)");
+	private static final String[] SUFFIX_ORDER = {"alpha", "beta", "pre", "rc", "p"};
+
+	public static boolean isValid (String version) {
+		return VERSION.matcher(version).matches();
+	}
+
+	/**
+	 * Negative, zero or positive as a is older than, the same as or newer than
+	 * b. Both must be valid versions.
+	 */
+	public static int compare (String a, String b) {
+		Matcher ma = VERSION.matcher(a);
+		Matcher mb = VERSION.matcher(b);
+		if (!ma.matches() || !mb.matches()) {
+			throw new IllegalArgumentException("Not a version: " + (ma.matches() ? b : a));
+		}
+
+		// PMS 3.3.1: numeric components
+		String[] na = ma.group(1).split("\\.");
+		String[] nb = mb.group(1).split("\\.");
+		int result = PackageVersion.compareNumbers(na[0], nb[0]);
+		for (int i = 1; result == 0 && i < Math.min(na.length, nb.length); i++) {
+			if (na[i].startsWith("0") || nb[i].startsWith("0")) {
+				result = PackageVersion.stripTrailingZeros(na[i]).compareTo(PackageVersion.stripTrailingZeros(nb[i]));
+			} else {
+				result = PackageVersion.compareNumbers(na[i], nb[i]);
+			}
+		}
+		if (result == 0) {
+			result = na.length - nb.length;
+		}
+
+		// PMS 3.3.2: letter
+		if (result == 0) {
+			result = ma.group(2).compareTo(mb.group(2));
+		}
+
+		// PMS 3.3.3: suffixes
+		if (result == 0) {
+			Matcher sa = SUFFIX.matcher(ma.group(3));
+			Matcher sb = SUFFIX.matcher(mb.group(3));
+			while (result == 0) {
+				boolean hasA = sa.find();
+				boolean hasB = sb.find();
+				if (!hasA && !hasB) {
+					break;
+				} else if (hasA && hasB) {
+					result = PackageVersion.suffixRank(sa.group(1)) - PackageVersion.suffixRank(sb.group(1));
+					if (result == 0) {
+						result = PackageVersion.compareNumbers(sa.group(2), sb.group(2));
+					}
+				} else if (hasA) {
+					result = sa.group(1).equals("p") ? 1 : -1;
+				} else {
+					result = sb.group(1).equals("p") ? -1 : 1;
+				}
+			}
+		}
+
+		// PMS 3.3.4: revision
+		if (result == 0) {
+			result = PackageVersion.compareNumbers(PackageVersion.getRevision(ma), PackageVersion.getRevision(mb));
+		}
+		return Integer.signum(result);
+	}
+
+	public static String stripRevision (String version) {
+		int revision = version.lastIndexOf("-r");
+		return (revision > -1) ? version.substring(0, revision) : version;
+	}
+
+	private static String getRevision (Matcher version) {
+		return (version.group(4) != null) ? version.group(4) : "0";
+	}
+
+	private static int suffixRank (String suffix) {
+		for (int i = 0; i < SUFFIX_ORDER.length; i++) {
+			if (SUFFIX_ORDER[i].equals(suffix)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// Arbitrarily long unsigned integers; an empty string is zero
+	private static int compareNumbers (String a, String b) {
+		a = PackageVersion.stripLeadingZeros(a);
+		b = PackageVersion.stripLeadingZeros(b);
+		if (a.length() != b.length()) {
+			return a.length() - b.length();
+		}
+		return a.compareTo(b);
+	}
+
+	private static String stripLeadingZeros (String number) {
+		int start = 0;
+		while (start < number.length() && number.charAt(start) == '0') {
+			start++;
+		}
+		return number.substring(start);
+	}
+
+	private static String stripTrailingZeros (String number) {
+		int end = number.length();
+		while (end > 0 && number.charAt(end - 1) == '0') {
+			end--;
+		}
+		return number.substring(0, end);
+	}
+
+}
@@ -0,0 +1,226 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Hands out the parsed contents of profile files for one resolution. Files are
+ * keyed on their canonical path, so a profile directory that is inherited more
+ * than once (or through different relative paths) is only read once; Profile
+ * still applies it every time it is reached.
+ *
+ * When given an executor, prefetch() follows the parent files of a profile and
+ * parses every file of every profile it reaches concurrently. Anything that was
+ * not prefetched is parsed by the thread that asks for it.
+ */
+class ParsedFileCache {
+
+	private ConcurrentHashMap<String,FutureTask<ParsedProfileFile>> files = new ConcurrentHashMap<String,FutureTask<ParsedProfileFile>>();
+	private ConcurrentHashMap<String,String> canonicalProfiles = new ConcurrentHashMap<String,String>(); // profile path -> canonical path
+	private Set<String> prefetchedProfiles = ConcurrentHashMap.newKeySet();
+	private ExecutorService executor = null;
+	private ParsedFileStore store = null; // optional, keeps parsed files between runs
+	private ResolutionStats stats = null; // optional, what each file cost
+	private Diagnostics diagnostics = new Diagnostics(System.err); // what is wrong with the files, reported as they are applied
+	private InheritanceGraph inheritance = new InheritanceGraph(); // what each profile reached inherits from
+	private SymbolTable symbols = null; // the ids of everything parsed here, and of every environment merged from it
+	private PrintStream progress = System.out; // where verbose progress goes
+
+	private boolean verbose = false;
+	private boolean showMinus = false;
+	private String search = "";
+
+	public ParsedFileCache (ExecutorService executor, boolean verbose, boolean showMinus, String search) {
+		this(new SymbolTable(), executor, verbose, showMinus, search);
+	}
+
+	public ParsedFileCache (SymbolTable symbols, ExecutorService executor, boolean verbose, boolean showMinus, String search) {
+		this.symbols = symbols;
+		this.executor = executor;
+		this.verbose = verbose;
+		this.showMinus = showMinus;
+		this.search = search;
+	}
+
+	public void setStore (ParsedFileStore store) {
+		this.store = store;
+	}
+
+	public void setStats (ResolutionStats stats) {
+		this.stats = stats;
+	}
+	public ResolutionStats getStats () {
+		return this.stats;
+	}
+
+	public Diagnostics getDiagnostics () {
+		return this.diagnostics;
+	}
+
+	public void setProgress (PrintStream progress) {
+		this.progress = progress;
+	}
+	public PrintStream getProgress () {
+		return this.progress;
+	}
+
+	public SymbolTable getSymbols () {
+		return this.symbols;
+	}
+
+	public InheritanceGraph getInheritanceGraph () {
+		return this.inheritance;
+	}
+
+	public String getCanonicalPath (String profilePath) throws IOException {
+		String canonicalPath = this.canonicalProfiles.get(profilePath);
+		if (canonicalPath == null) {
+			canonicalPath = new File(profilePath).getCanonicalPath();
+			this.canonicalProfiles.put(profilePath, canonicalPath);
+		}
+		return canonicalPath;
+	}
+
+	public ParsedProfileFile get (ProfileFile file) throws IOException {
+		FutureTask<ParsedProfileFile> task = this.getTask(this.getCanonicalPath(file.getProfilePath()), file);
+		task.run(); // does nothing if someone else already started it
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException("Interrupted while waiting for " + file.getPath() + " to be parsed");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			} else if (cause instanceof Error) {
+				throw (Error)cause;
+			}
+			throw new IOException("Could not parse " + file.getPath(), cause);
+		}
+	}
+
+	public void invalidate (String canonicalProfilePath, String fileName) {
+		this.files.remove(canonicalProfilePath + "/" + fileName);
+	}
+
+	public void prefetch (final String profilePath) {
+		if (this.executor == null) {
+			return;
+		}
+		String canonicalPath;
+		try {
+			canonicalPath = this.getCanonicalPath(profilePath);
+		} catch (IOException e) {
+			return; // Profile will complain about it when it gets there
+		}
+		if (!this.prefetchedProfiles.add(canonicalPath)) {
+			return; // already reached through another child (or a cycle, which Profile will report)
+		}
+
+		FutureTask<ParsedProfileFile> parentsTask = null;
+		for (ProfileFile[] round: Profile.createFiles(profilePath, this.verbose, this.showMinus, this.search)) {
+			for (ProfileFile file: round) {
+				if (file.getFileName().equals("parent")) {
+					parentsTask = this.getTask(canonicalPath, file);
+				} else {
+					this.executor.execute(this.getTask(canonicalPath, file));
+				}
+			}
+		}
+
+		// Parents are only known once the parent file is parsed, so follow them from there
+		final FutureTask<ParsedProfileFile> parentsFile = parentsTask;
+		this.executor.execute(new Runnable() {
+			public void run () {
+				parentsFile.run();
+				try {
+					ParsedProfileFile parents = parentsFile.get();
+					for (int l = 0; l < parents.getLineCount(); l++) {
+						prefetch(profilePath + "/" + symbols.get(parents.getPieces(l)[0]));
+					}
+				} catch (Exception e) {
+					// the problem is reported once the file is applied
+				}
+			}
+		});
+	}
+
+	private FutureTask<ParsedProfileFile> getTask (String canonicalProfilePath, final ProfileFile file) {
+		final String canonicalPath = canonicalProfilePath + "/" + file.getFileName();
+		FutureTask<ParsedProfileFile> task = this.files.get(canonicalPath);
+		if (task == null) {
+			task = new FutureTask<ParsedProfileFile>(new Callable<ParsedProfileFile>() {
+				public ParsedProfileFile call () throws IOException {
+					ProfileFileEvent event = new ProfileFileEvent();
+					event.begin();
+					long start = System.nanoTime();
+					long cpuStart = (stats != null) ? ResolutionStats.getCpuTime() : 0;
+					ParsedProfileFile parsed;
+					if (store != null) {
+						parsed = store.parse(file, canonicalPath, symbols, diagnostics);
+					} else {
+						parsed = file.parse(symbols, diagnostics);
+					}
+					if (stats != null) {
+						stats.get(canonicalPath).addParse(parsed, System.nanoTime() - start, ResolutionStats.getCpuTime() - cpuStart);
+					}
+					event.end();
+					if (event.shouldCommit()) {
+						event.path = canonicalPath;
+						event.phase = "parse";
+						event.bytes = parsed.getByteCount();
+						event.lines = parsed.getLineCount();
+						event.tokens = parsed.getTokenCount();
+						event.diagnostics = parsed.getNoticeCount();
+						event.commit();
+					}
+					return parsed;
+				}
+			});
+			FutureTask<ParsedProfileFile> existingTask = this.files.putIfAbsent(canonicalPath, task);
+			if (existingTask != null) {
+				task = existingTask;
+			}
+		}
+		return task;
+	}
+
+}
@@ -0,0 +1,223 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Keeps parsed profile files in a directory between runs. An entry is used as
+ * long as the file it came from has the same size and modification time, and
+ * was parsed with the same rules; otherwise the file is parsed again and the
+ * entry replaced. Anything wrong with an entry just makes it a miss, including
+ * a count or length that could not fit in what is left of it.
+ */
+class ParsedFileStore {
+
+	private static final int MAGIC = 0x50495043; // "PIPC"
+	private static final int VERSION = 3; // 2: notices are Diagnostics codes; 3: byte counts
+	private static final long RACY_MILLIS = 2000; // files this fresh may still change without their size or mtime changing
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private File directory = null;
+
+	public ParsedFileStore (File directory) throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Could not create cache directory " + directory.getPath());
+		}
+		this.directory = directory;
+	}
+
+	public ParsedProfileFile parse (ProfileFile file, String canonicalPath, SymbolTable symbols, Diagnostics diagnostics) throws IOException {
+		File source = new File(file.getPath());
+		if (!source.isFile()) {
+			return file.parse(symbols, diagnostics); // nothing worth storing
+		}
+		long size = source.length();
+		long modified = source.lastModified();
+		String signature = file.getParseSignature(diagnostics);
+		File entry = new File(this.directory, ParsedFileStore.entryName(canonicalPath, signature));
+
+		ParsedProfileFile parsed = this.load(entry, canonicalPath, signature, size, modified, symbols);
+		if (parsed != null) {
+			return parsed;
+		}
+		parsed = file.parse(symbols, diagnostics);
+		if (System.currentTimeMillis() - modified > RACY_MILLIS) {
+			this.store(entry, canonicalPath, signature, size, modified, parsed, symbols);
+		}
+		return parsed;
+	}
+
+	private ParsedProfileFile load (File entry, String canonicalPath, String signature, long size, long modified, SymbolTable symbols) {
+		DataInputStream in = null;
+		try {
+			long limit = entry.length(); // every count and length must fit in the entry
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			if (!ParsedFileStore.readString(in, limit).equals(canonicalPath) || !ParsedFileStore.readString(in, limit).equals(signature)) {
+				return null; // hash collision, or a stale entry
+			}
+			if (in.readLong() != size || in.readLong() != modified) {
+				return null;
+			}
+
+			ParsedProfileFile parsed = new ParsedProfileFile();
+			int status = in.readInt();
+			if (!ParsedProfileFile.isStatus(status)) {
+				return null;
+			}
+			parsed.setStatus(status);
+			parsed.setByteCount(in.readLong());
+			int lineCount = ParsedFileStore.readLength(in, limit);
+			for (int l = 0; l < lineCount; l++) {
+				int lineNum = in.readInt();
+				int[] pieces = new int[ParsedFileStore.readLength(in, limit)];
+				for (int p = 0; p < pieces.length; p++) {
+					pieces[p] = symbols.intern(ParsedFileStore.readString(in, limit));
+				}
+				parsed.addLine(lineNum, pieces);
+			}
+			int noticeCount = ParsedFileStore.readLength(in, limit);
+			for (int n = 0; n < noticeCount; n++) {
+				int position = in.readInt();
+				int code = in.readInt();
+				if (!Diagnostics.isCode(code)) {
+					return null;
+				}
+				int lineNum = in.readInt();
+				String detail = in.readBoolean() ? ParsedFileStore.readString(in, limit) : null;
+				parsed.addNotice(position, code, lineNum, detail);
+			}
+			return parsed;
+		} catch (IOException e) {
+			return null; // missing, truncated or otherwise unusable
+		} catch (RuntimeException e) {
+			return null; // corrupt in some way the checks above missed
+		} finally {
+			if (in != null) {
+				try { in.close(); } catch (IOException e) { }
+			}
+		}
+	}
+
+	private void store (File entry, String canonicalPath, String signature, long size, long modified, ParsedProfileFile parsed, SymbolTable symbols) {
+		File temporary = null;
+		try {
+			temporary = File.createTempFile(entry.getName(), ".tmp", this.directory);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				ParsedFileStore.writeString(out, canonicalPath);
+				ParsedFileStore.writeString(out, signature);
+				out.writeLong(size);
+				out.writeLong(modified);
+
+				out.writeInt(parsed.getStatus());
+				out.writeLong(parsed.getByteCount());
+				out.writeInt(parsed.getLineCount());
+				for (int l = 0; l < parsed.getLineCount(); l++) {
+					int[] pieces = parsed.getPieces(l);
+					out.writeInt(parsed.getLineNumber(l));
+					out.writeInt(pieces.length);
+					for (int piece: pieces) {
+						ParsedFileStore.writeString(out, symbols.get(piece));
+					}
+				}
+				out.writeInt(parsed.getNoticeCount());
+				for (int n = 0; n < parsed.getNoticeCount(); n++) {
+					out.writeInt(parsed.getNoticePosition(n));
+					out.writeInt(parsed.getNoticeCode(n));
+					out.writeInt(parsed.getNoticeLine(n));
+					out.writeBoolean(parsed.getNoticeDetail(n) != null);
+					if (parsed.getNoticeDetail(n) != null) {
+						ParsedFileStore.writeString(out, parsed.getNoticeDetail(n));
+					}
+				}
+			} finally {
+				out.close();
+			}
+			if (!temporary.renameTo(entry)) { // rename so other runs never see half an entry
+				temporary.delete();
+			}
+		} catch (IOException e) {
+			if (temporary != null) {
+				temporary.delete();
+			}
+			// the cache is only an optimization
+		}
+	}
+
+	private static String entryName (String canonicalPath, String signature) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest((canonicalPath + "\n" + signature).getBytes(UTF8));
+			StringBuilder name = new StringBuilder();
+			for (byte b: digest) {
+				name.append(Character.forDigit((b >> 4) & 0xf, 16));
+				name.append(Character.forDigit(b & 0xf, 16));
+			}
+			return name.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	private static void writeString (DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF8); // not writeUTF(): a long USE line could pass its 64k limit
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Reads a count or length, which is never negative and, since each thing
+	 * counted takes at least a byte, never more than limit.
+	 */
+	private static int readLength (DataInputStream in, long limit) throws IOException {
+		int length = in.readInt();
+		if (length < 0 || length > limit) {
+			throw new IOException("Bad length " + length);
+		}
+		return length;
+	}
+
+	private static String readString (DataInputStream in, long limit) throws IOException {
+		byte[] bytes = new byte[ParsedFileStore.readLength(in, limit)];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+}
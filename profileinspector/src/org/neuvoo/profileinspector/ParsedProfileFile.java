@@ -0,0 +1,136 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Vector;
+
+/**
+ * The result of reading and splitting one profile file, without any of it
+ * having been merged into a ProfileEnvironment yet. Everything in here only
+ * depends on the file's contents, so it can be produced on any thread and
+ * applied later, in PMS order, by ProfileFile.apply().
+ */
+class ParsedProfileFile {
+
+	public static final int STATUS_FOUND = 1; // includes files that may be treated as blank
+	public static final int STATUS_IGNORED = 2;
+	public static final int STATUS_MISSING = 3;
+	private int status = STATUS_FOUND;
+
+	private Vector<int[]> lines = new Vector<int[]>(); // SymbolTable ids
+	private Vector<Integer> lineNumbers = new Vector<Integer>();
+	private long byteCount = 0; // of the file as read
+
+	// Notices are Diagnostics codes without a path, so they report the same no matter how the file was reached
+	private Vector<Integer> noticePositions = new Vector<Integer>();
+	private Vector<Integer> noticeCodes = new Vector<Integer>();
+	private Vector<Integer> noticeLines = new Vector<Integer>();
+	private Vector<String> noticeDetails = new Vector<String>();
+
+	public void addLine (int lineNum, int[] pieces) {
+		this.lines.add(pieces);
+		this.lineNumbers.add(lineNum);
+	}
+
+	public void addNotice (int code, int lineNum, String detail) {
+		this.addNotice(this.lines.size(), code, lineNum, detail); // reported right before the next line is applied
+	}
+
+	public void addNotice (int position, int code, int lineNum, String detail) {
+		this.noticePositions.add(position);
+		this.noticeCodes.add(code);
+		this.noticeLines.add(lineNum);
+		this.noticeDetails.add(detail);
+	}
+
+	/**
+	 * Reports the notices from firstNotice up to the ones before line, and
+	 * returns the first one not reported.
+	 */
+	public int reportNotices (Diagnostics diagnostics, String path, int line, int firstNotice) {
+		int n = firstNotice;
+		while (n < this.noticeCodes.size() && this.noticePositions.get(n) <= line) {
+			diagnostics.report(this.noticeCodes.get(n), path, this.noticeLines.get(n), this.noticeDetails.get(n));
+			n++;
+		}
+		return n;
+	}
+
+	public static boolean isStatus (int status) {
+		return status == STATUS_FOUND || status == STATUS_IGNORED || status == STATUS_MISSING;
+	}
+
+	public void setStatus (int status) {
+		this.status = status;
+	}
+	public int getStatus () {
+		return this.status;
+	}
+	public void setByteCount (long byteCount) {
+		this.byteCount = byteCount;
+	}
+	public long getByteCount () {
+		return this.byteCount;
+	}
+	public int getTokenCount () {
+		int tokens = 0;
+		for (int[] pieces: this.lines) {
+			tokens += pieces.length;
+		}
+		return tokens;
+	}
+	public int getLineCount () {
+		return this.lines.size();
+	}
+	public int[] getPieces (int line) {
+		return this.lines.get(line);
+	}
+	public int getLineNumber (int line) {
+		return this.lineNumbers.get(line);
+	}
+	public int getNoticeCount () {
+		return this.noticeCodes.size();
+	}
+	public int getNoticePosition (int notice) {
+		return this.noticePositions.get(notice);
+	}
+	public int getNoticeCode (int notice) {
+		return this.noticeCodes.get(notice);
+	}
+	public int getNoticeLine (int notice) {
+		return this.noticeLines.get(notice);
+	}
+	public String getNoticeDetail (int notice) {
+		return this.noticeDetails.get(notice);
+	}
+
+}
@@ -0,0 +1,197 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The keys of one category and their values, as SymbolTable ids, in the order
+ * the keys were first set. It is never changed: with() returns a new version
+ * and leaves this one as it was, sharing everything but the path to the key it
+ * changed. Any number of versions can be kept and read from any thread.
+ *
+ * The values are kept in a radix trie indexed by the key id itself, 32 ways
+ * at each level, instead of in a hash trie. SymbolTable ids are dense over the
+ * whole table rather than over one category (every key, value and parent path
+ * the resolution interns takes one), so the depth follows the largest key id
+ * set, not the number of keys: three levels while ids are under 32768, four
+ * under about a million. A lookup touches one node per level and an update
+ * copies one 32-slot node per level, so a category of a few keys with large
+ * ids pays for the whole depth, and mostly empty nodes. A second trie indexed
+ * by insertion number keeps the order of the keys; that one is as deep as the
+ * category is large.
+ *
+ * As a Map it is read-only, and boxes every key it hands out; get(int) and
+ * containsKey(int) do not.
+ */
+class PersistentKeyMap extends AbstractMap<Integer,int[]> {
+
+	public static final PersistentKeyMap EMPTY = new PersistentKeyMap(Trie.EMPTY, Trie.EMPTY, 0);
+
+	private final Trie values; // key id -> int[]
+	private final Trie order; // insertion number -> Integer key id
+	private final int size;
+
+	private PersistentKeyMap (Trie values, Trie order, int size) {
+		this.values = values;
+		this.order = order;
+		this.size = size;
+	}
+
+	public int[] get (int key) {
+		return (int[])this.values.get(key);
+	}
+
+	public boolean containsKey (int key) {
+		return this.values.get(key) != null;
+	}
+
+	/**
+	 * This map with key set to values. A key that was already set keeps its
+	 * place in the order, as in a LinkedHashMap.
+	 */
+	public PersistentKeyMap with (int key, int[] values) {
+		Object existing = this.values.get(key);
+		if (existing == values) {
+			return this;
+		}
+		Trie order = (existing == null) ? this.order.set(this.size, Integer.valueOf(key)) : this.order;
+		return new PersistentKeyMap(this.values.set(key, values), order, (existing == null) ? this.size + 1 : this.size);
+	}
+
+	public int getKeyAt (int index) {
+		return (Integer)this.order.get(index);
+	}
+
+	public int size () {
+		return this.size;
+	}
+
+	public int[] get (Object key) {
+		return (key instanceof Integer) ? this.get(((Integer)key).intValue()) : null;
+	}
+
+	public boolean containsKey (Object key) {
+		return (key instanceof Integer) && this.containsKey(((Integer)key).intValue());
+	}
+
+	public Set<Map.Entry<Integer,int[]>> entrySet () {
+		return new AbstractSet<Map.Entry<Integer,int[]>>() {
+			public int size () {
+				return PersistentKeyMap.this.size;
+			}
+			public Iterator<Map.Entry<Integer,int[]>> iterator () {
+				return new Iterator<Map.Entry<Integer,int[]>>() {
+					private int next = 0;
+					public boolean hasNext () {
+						return this.next < PersistentKeyMap.this.size;
+					}
+					public Map.Entry<Integer,int[]> next () {
+						if (this.next >= PersistentKeyMap.this.size) {
+							throw new NoSuchElementException();
+						}
+						Integer key = (Integer)PersistentKeyMap.this.order.get(this.next++);
+						return new AbstractMap.SimpleImmutableEntry<Integer,int[]>(key, PersistentKeyMap.this.get(key.intValue()));
+					}
+					public void remove () {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * An immutable array of any length, indexed from 0, where unset slots are
+	 * null. Setting a slot copies the nodes on its path and shares the rest.
+	 */
+	private static class Trie {
+
+		private static final int BITS = 5;
+		private static final int WIDTH = 1 << BITS;
+		private static final int MASK = WIDTH - 1;
+
+		static final Trie EMPTY = new Trie(new Object[WIDTH], 0);
+
+		private final Object[] root;
+		private final int shift; // BITS times the number of levels below the root
+
+		private Trie (Object[] root, int shift) {
+			this.root = root;
+			this.shift = shift;
+		}
+
+		Object get (int index) {
+			if ((index >>> this.shift) >= WIDTH) {
+				return null; // past anything this trie has room for
+			}
+			Object[] node = this.root;
+			for (int level = this.shift; level > 0; level -= BITS) {
+				node = (Object[])node[(index >>> level) & MASK];
+				if (node == null) {
+					return null;
+				}
+			}
+			return node[index & MASK];
+		}
+
+		Trie set (int index, Object value) {
+			Object[] root = this.root;
+			int shift = this.shift;
+			while ((index >>> shift) >= WIDTH) { // grow a level on top until index fits
+				Object[] grown = new Object[WIDTH];
+				grown[0] = root;
+				root = grown;
+				shift += BITS;
+			}
+			return new Trie(Trie.set(root, shift, index, value), shift);
+		}
+
+		private static Object[] set (Object[] node, int level, int index, Object value) {
+			Object[] copy = (node != null) ? node.clone() : new Object[WIDTH];
+			int slot = (index >>> level) & MASK;
+			if (level == 0) {
+				copy[slot] = value;
+			} else {
+				copy[slot] = Trie.set((Object[])copy[slot], level - BITS, index, value);
+			}
+			return copy;
+		}
+
+	}
+
+}
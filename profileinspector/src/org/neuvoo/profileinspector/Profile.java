@@ -0,0 +1,576 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+class Profile {
+
+	private String path = "";
+	private ProfileEnvironment environment = null;
+	private ProfileFile files[][];
+
+	private boolean verbose = false;
+	private boolean showMinus = false;
+	private String search = "";
+	private Vector<Profile> parents = new Vector<Profile>();
+	private ParsedFileCache parsedFiles = null; // shared by every Profile of one resolution
+	private String canonicalPath = null;
+
+	// only while this profile is being merged
+	private Vector<String> parentNames = null;
+	private LinkedHashSet<String> parentPaths = null; // canonical
+	private int nextParent = 0;
+	private ProfileEvent event = null;
+
+	public Profile (String path, ProfileEnvironment environment, boolean verbose, boolean showMinus, String search) throws IOException, IllegalArgumentException {
+		this(path, environment, verbose, showMinus, search, new ParsedFileCache(environment.getSymbols(), null, verbose, showMinus, search), null, true); // nobody else has this cache to flush it
+	}
+
+	public Profile (String path, ProfileEnvironment environment, boolean verbose, boolean showMinus, String search, ParsedFileCache parsedFiles) throws IOException, IllegalArgumentException {
+		this(path, environment, verbose, showMinus, search, parsedFiles, null);
+	}
+
+	/**
+	 * Resolves the profile at path, reusing firstParent (if not null) for its
+	 * first parent instead of resolving that again. firstParent must have been
+	 * resolved into a fresh environment: the first parent starts by replacing
+	 * the only categories merged before it (parent and eapi), so what it leaves
+	 * behind does not depend on the child. Later parents stack on top of what
+	 * came before them, so they are always resolved again.
+	 */
+	public Profile (String path, ProfileEnvironment environment, boolean verbose, boolean showMinus, String search, ParsedFileCache parsedFiles, Profile firstParent) throws IOException, IllegalArgumentException {
+		this(path, environment, verbose, showMinus, search, parsedFiles, firstParent, false);
+	}
+
+	private Profile (String path, ProfileEnvironment environment, boolean verbose, boolean showMinus, String search, ParsedFileCache parsedFiles, Profile firstParent, boolean flushDiagnostics) throws IOException, IllegalArgumentException {
+		this.path = path;
+		this.environment = environment;
+		this.verbose = verbose;
+		this.showMinus = showMinus;
+		this.search = search;
+		this.parsedFiles = parsedFiles;
+		if (environment.getSymbols() != parsedFiles.getSymbols()) {
+			throw new IllegalArgumentException("The environment for " + path + " does not use the SymbolTable of its ParsedFileCache");
+		}
+		try {
+			this.resolve(firstParent);
+		} finally {
+			if (flushDiagnostics) {
+				this.parsedFiles.getDiagnostics().flush(); // whatever was found before anything went wrong, too
+			}
+		}
+	}
+
+	private Profile (String path, Profile child) { // a parent of child, merged into the same environment
+		this.path = path;
+		this.environment = child.environment;
+		this.verbose = child.verbose;
+		this.showMinus = child.showMinus;
+		this.search = child.search;
+		this.parsedFiles = child.parsedFiles;
+	}
+
+	/**
+	 * Merges this profile and everything it inherits from, each parent before
+	 * the rest of its child. The profiles being merged are kept on a stack of
+	 * our own rather than on the Java one, so a long chain of parents costs
+	 * heap instead of stack, and a parent that is already on it is a cycle.
+	 */
+	private void resolve (Profile firstParent) throws IOException, IllegalArgumentException {
+		ArrayDeque<Profile> merging = new ArrayDeque<Profile>();
+		HashSet<String> mergingPaths = new HashSet<String>(); // canonical
+		this.begin();
+		merging.push(this);
+		mergingPaths.add(this.canonicalPath);
+		while (!merging.isEmpty()) {
+			Profile profile = merging.peek();
+			if (profile.nextParent == profile.parentNames.size()) {
+				profile.finish();
+				merging.pop();
+				mergingPaths.remove(profile.canonicalPath);
+				continue;
+			}
+
+			String parent = profile.parentNames.get(profile.nextParent++);
+			String absoluteParent = this.parsedFiles.getCanonicalPath(profile.path+"/"+parent);
+			if (!profile.parentPaths.add(absoluteParent)) { // PMS 5.2.1
+				throw new IllegalArgumentException("Found a cycle, which results in a broken profile: child path " + profile.path + " is trying to include parent path " + parent + " more than once.");
+			}
+			
+			if (profile == this && this.parents.isEmpty() && firstParent != null) {
+				if (!absoluteParent.equals(this.parsedFiles.getCanonicalPath(firstParent.getPath()))) {
+					throw new IllegalArgumentException("The first parent of " + this.path + " is " + parent + ", not " + firstParent.getPath());
+				}
+				this.environment = firstParent.getEnvironment().snapshot();
+				this.parents.add(firstParent);
+			} else if (mergingPaths.contains(absoluteParent)) {
+				StringBuilder cycle = new StringBuilder();
+				boolean inCycle = false;
+				for (Iterator<Profile> i = merging.descendingIterator(); i.hasNext(); ) {
+					Profile child = i.next();
+					inCycle = inCycle || child.canonicalPath.equals(absoluteParent);
+					if (inCycle) {
+						cycle.append(child.path).append(" -> ");
+					}
+				}
+				cycle.append(profile.path+"/"+parent);
+				throw new IllegalArgumentException("Found a cycle, which results in a broken profile: " + cycle);
+			} else {
+				Profile parentProfile = new Profile(profile.path+"/"+parent, profile);
+				profile.parents.add(parentProfile);
+				parentProfile.begin();
+				merging.push(parentProfile);
+				mergingPaths.add(parentProfile.canonicalPath);
+			}
+		}
+	}
+
+	private void begin () throws IOException {
+		this.event = new ProfileEvent();
+		this.event.begin();
+		
+		File pathFile = new File(this.path);
+		this.canonicalPath = this.parsedFiles.getCanonicalPath(this.path); // resolve symlinks, get absolute path. Used for cycle checking.
+		
+		if (!pathFile.exists()) {
+			this.parsedFiles.getDiagnostics().report(Diagnostics.PROFILE_MISSING, this.path, -1, null);
+		}
+		
+		this.files = Profile.createFiles(this.path, this.verbose, this.showMinus, this.search);
+
+		this.mergeFilesToEnvironment(this.files[0], this.environment);
+		
+		this.parentNames = this.environment.getVars("parent", "list");
+		this.parentPaths = new LinkedHashSet<String>(); // only this visit's parents: a profile shared by several children is reached more than once
+		this.nextParent = 0;
+	}
+
+	private void finish () throws IOException {
+		this.parsedFiles.getInheritanceGraph().setParents(this.canonicalPath, this.parentPaths);
+
+		if (verbose) this.parsedFiles.getProgress().println("Investigating profile at " + path); // we do this after because parents do investigation first // PMS 5.2.1
+		
+		this.mergeFilesToEnvironment(this.files[1], this.environment);
+		
+		this.event.path = this.path;
+		this.event.parents = this.parents.size();
+		this.event.commit();
+
+		this.parentNames = null;
+		this.parentPaths = null;
+		this.event = null;
+	}
+	
+	public static ProfileFile[][] createFiles (String path, boolean verbose, boolean showMinus, String search) {
+		return new ProfileFile[][]{ // files are listed in rounds: the ones that need to load before one are listed in a round before that one
+			{ // round one: it is special in that it gets processed before we announce we are processing this profile
+				new ProfileFile( // PMS 5.2.1
+								path+"/parent",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_BLANK
+								+ ProfileFile.EXCEPT_NO_COMMENT
+								+ ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
+									}
+								},
+								ProfileFile.INHERIT_NONE,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.2
+								path+"/eapi",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_BLANK,
+								ProfileFile.EXCEPT_NO_BLANK
+								+ ProfileFile.EXCEPT_NO_COMMENT
+								+ ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_NUMBER
+									}
+								},
+								ProfileFile.INHERIT_NONE,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+			},
+			{ // round two
+				new ProfileFile( // PMS 5.2.3
+								path+"/deprecated",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_BLANK
+								+ ProfileFile.EXCEPT_NO_COMMENT
+								+ ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
+									}
+								},
+								ProfileFile.INHERIT_NONE,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.4
+								path+"/make.defaults",
+								ProfileFile.TYPE_KEYVAL_BASH,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								0,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
+									},
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_SPECIAL_ONLY+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
+									}
+								},
+								ProfileFile.INHERIT_PARENT+ProfileFile.INHERIT_APPEND_SPECIAL_ONLY,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.5
+								path+"/virtuals",
+								ProfileFile.TYPE_3D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									},
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									}
+								},
+								ProfileFile.INHERIT_PARENT+ProfileFile.INHERIT_NO_APPEND,
+								ProfileFile.DEPRECATED_YES,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.7
+								path+"/packages",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS+ProfileFile.LINEPIECE_PREFIX_ASTERIK, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.9
+								path+"/package.mask",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.10
+								path+"/package.provided",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.11
+								path+"/package.use",
+								ProfileFile.TYPE_3D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									},
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_FLAG
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.12
+								path+"/package.use.force",
+								ProfileFile.TYPE_3D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									},
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_FLAG
+									},
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.12
+								path+"/package.use.mask",
+								ProfileFile.TYPE_3D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
+									},
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_FLAG
+									},
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.12
+								path+"/use.force",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_FLAG
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				),
+				new ProfileFile( // PMS 5.2.12
+								path+"/use.mask",
+								ProfileFile.TYPE_2D,
+								ProfileFile.NOEXISTS_CAN_IGNORE,
+								ProfileFile.EXCEPT_NO_LINE_CONT,
+								new int[][] {
+									{
+										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_FLAG
+									}
+								},
+								ProfileFile.INHERIT_PARENT,
+								ProfileFile.DEPRECATED_NO,
+								verbose, showMinus, search
+				)
+			},
+		};
+	}
+	
+	public ProfileEnvironment getEnvironment () {
+		return this.environment;
+	}
+	public ParsedFileCache getParsedFiles () {
+		return this.parsedFiles;
+	}
+	public String getPath () {
+		return this.path;
+	}
+	public Vector<Profile> getParents () {
+		return this.parents;
+	}
+	public ProfileFile[][] getFiles () {
+		return this.files;
+	}
+	
+	public void reapply (String fileName, ProfileEnvironment environment) throws IOException {
+		// Same order as the constructor, but only for one of the files merged after the parents.
+		// The files keep the EAPI they saw the first time, so no other category is needed.
+		for (Profile profile: this.getMergeOrder()) {
+			for (ProfileFile currFile: profile.files[1]) {
+				if (currFile.getFileName().equals(fileName)) {
+					profile.applyFile(currFile, environment);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Every visit to this profile and its parents, in the order they finished
+	 * merging: parents before their child, and a profile reached through more
+	 * than one child once for each.
+	 */
+	private Vector<Profile> getMergeOrder () {
+		Vector<Profile> order = new Vector<Profile>();
+		ArrayDeque<Profile> pending = new ArrayDeque<Profile>();
+		pending.push(this);
+		while (!pending.isEmpty()) { // child first, last parent first, then reversed
+			Profile profile = pending.pop();
+			order.add(profile);
+			for (Profile parent: profile.parents) {
+				pending.push(parent);
+			}
+		}
+		Collections.reverse(order);
+		return order;
+	}
+	
+	public void mergeFilesToEnvironment(ProfileFile[] files, ProfileEnvironment environment) throws FileNotFoundException, IOException {
+		for (ProfileFile currFile: files) {
+			this.applyFile(currFile, environment);
+		}
+	}
+	
+	private String getCanonicalPath (ProfileFile file) throws IOException {
+		return this.parsedFiles.getCanonicalPath(file.getProfilePath()) + "/" + file.getFileName();
+	}
+	
+	private void applyFile (ProfileFile file, ProfileEnvironment environment) throws FileNotFoundException, IOException {
+		ParsedProfileFile parsed = this.parsedFiles.get(file);
+		ResolutionStats stats = this.parsedFiles.getStats();
+		ProfileFileEvent event = new ProfileFileEvent();
+		event.begin();
+		long start = System.nanoTime();
+		long cpuStart = (stats != null) ? ResolutionStats.getCpuTime() : 0;
+		
+		file.apply(parsed, environment, this.parsedFiles.getDiagnostics());
+		
+		int diagnostics = parsed.getNoticeCount() + file.getWarningCount();
+		if (stats != null) {
+			stats.get(this.getCanonicalPath(file)).addMerge(System.nanoTime() - start, ResolutionStats.getCpuTime() - cpuStart, file.getMergeCount(), diagnostics);
+		}
+		event.end();
+		if (event.shouldCommit()) {
+			event.path = this.getCanonicalPath(file);
+			event.phase = "merge";
+			event.lines = parsed.getLineCount();
+			event.values = file.getMergeCount();
+			event.diagnostics = diagnostics;
+			event.commit();
+		}
+	}
+	
+	public String getHumanOutput () {
+		StringWriter results = new StringWriter();
+		this.writeHumanOutput(new PrintWriter(results));
+		return results.toString();
+	}
+	
+	public String getHumanOutput (ProfileFile file) {
+		StringWriter results = new StringWriter();
+		this.writeHumanOutput(file, new PrintWriter(results));
+		return results.toString();
+	}
+	
+	public void writeHumanOutput (PrintWriter out) {
+		Set<String> leftOverCategoryNames = new HashSet<String>(this.environment.getCategoryNames()); // a copy, as it is emptied below
+		
+		for (ProfileFile[] round: this.files) {
+			for (ProfileFile file: round) {
+				this.writeHumanOutput(file, out);
+				if (file.getType() != ProfileFile.TYPE_IGNORE) {
+					leftOverCategoryNames.remove(file.getFileName());
+				}
+			}
+		}
+		out.flush();
+		
+		Diagnostics diagnostics = this.parsedFiles.getDiagnostics();
+		if (verbose && diagnostics.isEnabled(Diagnostics.UNHANDLED_DATA)) {
+			// Warn about unhandled data
+			for (String categoryName: leftOverCategoryNames) {
+				for (int key: this.environment.getCategoryIds(categoryName).keySet()) {
+					diagnostics.report(Diagnostics.UNHANDLED_DATA, categoryName, -1, this.environment.getSymbols().get(key));
+				}
+			}
+			diagnostics.flush();
+		}
+	}
+	
+	public void writeHumanOutput (ProfileFile file, PrintWriter out) {
+		String fileName = file.getFileName();
+		out.write("###### " + fileName + "\n");
+		if (file.getType() == ProfileFile.TYPE_2D) {
+			Profile.writeValues(out, this.environment.getSymbols(), this.environment.getValueIds(fileName, ProfileFile.LIST_KEY), "", "\n", "\n");
+			out.write('\n');
+		} else if (file.getType() == ProfileFile.TYPE_3D) {
+			Profile.writeKeys(out, this.environment.getSymbols(), this.environment.getCategoryIds(fileName), " ", " ", "");
+			out.write('\n');
+		} else if (file.getType() == ProfileFile.TYPE_KEYVAL_BASH) {
+			Profile.writeKeys(out, this.environment.getSymbols(), this.environment.getCategoryIds(fileName), "=\"", " ", "\"");
+			out.write('\n');
+		}
+	}
+	
+	public static void writeValues (PrintWriter out, SymbolTable symbols, int[] values, String begin, String valueSeperator, String end) {
+		out.write(begin);
+		for (int v = 0; v < values.length; v++) {
+			out.write(symbols.get(values[v]));
+			if (v+1 < values.length) { out.write(valueSeperator); }
+		}
+		out.write(end);
+	}
+	
+	public static void writeKeys (PrintWriter out, SymbolTable symbols, PersistentKeyMap keys, String beginSeperator, String valueSeperator, String endSeperator) {
+		// Keys come out in HashMap order by name, as they always have, so the report does not change.
+		// That takes a map of the category's keys, so memory grows with the largest category written.
+		HashMap<String,int[]> byName = new HashMap<String,int[]>();
+		for (Map.Entry<Integer,int[]> key: keys.entrySet()) {
+			if (key.getValue().length > 0) {
+				byName.put(symbols.get(key.getKey()), key.getValue());
+			}
+		}
+		for (Map.Entry<String,int[]> key: byName.entrySet()) {
+			Profile.writeValues(out, symbols, key.getValue(), key.getKey()+beginSeperator, valueSeperator, endSeperator+"\n");
+		}
+	}
+}
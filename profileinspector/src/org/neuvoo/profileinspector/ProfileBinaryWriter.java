@@ -0,0 +1,96 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Writes a resolved profile in a compact binary form, for tools that would
+ * rather not parse text. All integers are 4 byte big-endian, as written by
+ * DataOutputStream. The stream is:
+ *
+ *   magic     the bytes "PIR1"
+ *   records   any number of: category, key, value count, that many values
+ *   end       the integer -1 where the next category would be
+ *
+ * Every category, key and value is a string reference n. If n is negative,
+ * -n-1 bytes of UTF-8 follow, and they are the next string of the stream.
+ * Otherwise it is the n-th string given so far (counting from 0). Flags and
+ * atoms repeat a lot between categories, so most of them are written once.
+ */
+class ProfileBinaryWriter extends ProfileRecordWriter {
+
+	public static final byte[] MAGIC = {'P', 'I', 'R', '1'};
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final DataOutputStream out;
+	private int[] references = new int[256]; // SymbolTable id -> string number + 1, 0 if not written yet
+	private int stringCount = 0;
+
+	public ProfileBinaryWriter (DataOutputStream out) throws IOException {
+		this.out = out;
+		this.out.write(MAGIC);
+	}
+
+	protected void writeRecord (String category, int key, int[] values) throws IOException {
+		this.writeString(this.symbols.intern(category));
+		this.writeString(key);
+		this.out.writeInt(values.length);
+		for (int value: values) {
+			this.writeString(value);
+		}
+	}
+
+	protected void finish () throws IOException {
+		this.out.writeInt(-1);
+		this.out.flush();
+	}
+
+	private void writeString (int symbol) throws IOException {
+		if (symbol >= this.references.length) {
+			int[] grown = new int[Math.max(symbol + 1, this.references.length * 2)];
+			System.arraycopy(this.references, 0, grown, 0, this.references.length);
+			this.references = grown;
+		}
+		if (this.references[symbol] > 0) {
+			this.out.writeInt(this.references[symbol] - 1);
+			return;
+		}
+		byte[] bytes = this.symbols.get(symbol).getBytes(UTF8);
+		this.out.writeInt(-bytes.length - 1);
+		this.out.write(bytes);
+		this.references[symbol] = ++this.stringCount;
+	}
+
+}
@@ -0,0 +1,216 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares two resolved profiles category by category and key by key, and
+ * writes only what differs, one change per line:
+ *
+ *   + category key value   value is only in the second profile
+ *   - category key value   value is only in the first profile
+ *   ~ category key value   value is in both, but was moved
+ *
+ * or as JSON Lines with "change" set to added, removed or moved. Values are
+ * compared as SymbolTable ids in hashed sets, so comparing a key costs time
+ * linear in its values; of the values in both, the fewest that explain the new
+ * order are reported as moved.
+ */
+class ProfileDiff {
+
+	public static final int ADDED = 0;
+	public static final int REMOVED = 1;
+	public static final int MOVED = 2;
+	private static final String[] SIGNS = { "+", "-", "~" };
+	private static final String[] CHANGES = { "added", "removed", "moved" };
+
+	private final PrintWriter out;
+	private final boolean json;
+	private SymbolTable symbols = null; // both profiles' ids must come from it
+	private int changeCount = 0;
+
+	public ProfileDiff (PrintWriter out, boolean json) {
+		this.out = out;
+		this.json = json;
+	}
+
+	/**
+	 * Writes what it takes to turn before into after, and returns how many
+	 * changes that was.
+	 */
+	public int compare (Profile before, Profile after) {
+		ProfileEnvironment beforeEnvironment = before.getEnvironment();
+		ProfileEnvironment afterEnvironment = after.getEnvironment();
+		if (beforeEnvironment.getSymbols() != afterEnvironment.getSymbols()) {
+			throw new IllegalArgumentException("Only profiles resolved with one ParsedFileCache can be compared");
+		}
+		this.symbols = beforeEnvironment.getSymbols();
+		for (ProfileFile[] round: after.getFiles()) {
+			for (ProfileFile file: round) {
+				if (file.getType() == ProfileFile.TYPE_IGNORE) {
+					continue;
+				}
+				this.compareCategory(file.getFileName(), beforeEnvironment.getCategoryIds(file.getFileName()), afterEnvironment.getCategoryIds(file.getFileName()));
+			}
+		}
+		this.out.flush();
+		return this.changeCount;
+	}
+
+	private void compareCategory (String category, PersistentKeyMap before, PersistentKeyMap after) {
+		for (Map.Entry<Integer,int[]> key: after.entrySet()) {
+			int[] beforeValues = before.get(key.getKey().intValue());
+			this.compareKey(category, key.getKey(), (beforeValues != null) ? beforeValues : new int[0], key.getValue());
+		}
+		for (Map.Entry<Integer,int[]> key: before.entrySet()) {
+			if (!after.containsKey(key.getKey().intValue())) {
+				this.compareKey(category, key.getKey(), key.getValue(), new int[0]);
+			}
+		}
+	}
+
+	private void compareKey (String category, int key, int[] before, int[] after) {
+		if (Arrays.equals(before, after)) {
+			return; // the usual case, and the cheapest to tell
+		}
+
+		// how many of each value before has that after has not matched yet
+		HashMap<Integer,Integer> unmatched = new HashMap<Integer,Integer>();
+		for (int v = 0; v < before.length; v++) {
+			Integer count = unmatched.get(before[v]);
+			unmatched.put(before[v], (count == null) ? 1 : count + 1);
+		}
+
+		// positions in before of the values after kept, in after's order
+		HashMap<Integer,int[]> positions = ProfileDiff.positions(before);
+		HashMap<Integer,Integer> taken = new HashMap<Integer,Integer>();
+		int[] kept = new int[after.length]; // indexes into after
+		int[] keptPositions = new int[after.length];
+		int keptCount = 0;
+		for (int v = 0; v < after.length; v++) {
+			Integer count = unmatched.get(after[v]);
+			if (count == null || count == 0) {
+				this.writeChange(ADDED, category, key, after[v]);
+				continue;
+			}
+			unmatched.put(after[v], count - 1);
+			Integer occurrence = taken.get(after[v]);
+			int o = (occurrence == null) ? 0 : occurrence;
+			taken.put(after[v], o + 1);
+			kept[keptCount] = v;
+			keptPositions[keptCount++] = positions.get(after[v])[o];
+		}
+
+		for (int v = 0; v < before.length; v++) {
+			Integer count = unmatched.get(before[v]);
+			if (count > 0) {
+				this.writeChange(REMOVED, category, key, before[v]);
+				unmatched.put(before[v], count - 1);
+			}
+		}
+
+		boolean[] inOrder = ProfileDiff.longestIncreasing(keptPositions, keptCount);
+		for (int k = 0; k < keptCount; k++) {
+			if (!inOrder[k]) {
+				this.writeChange(MOVED, category, key, after[kept[k]]);
+			}
+		}
+	}
+
+	// value -> the positions it occurs at, in order
+	private static HashMap<Integer,int[]> positions (int[] values) {
+		HashMap<Integer,int[]> positions = new HashMap<Integer,int[]>();
+		for (int v = 0; v < values.length; v++) {
+			int[] existing = positions.get(values[v]);
+			if (existing == null) {
+				positions.put(values[v], new int[] { v });
+			} else {
+				int[] grown = Arrays.copyOf(existing, existing.length + 1);
+				grown[existing.length] = v;
+				positions.put(values[v], grown);
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Marks one longest strictly increasing subsequence of the first length
+	 * values, found by patience sorting in O(n log n).
+	 */
+	private static boolean[] longestIncreasing (int[] values, int length) {
+		int[] tails = new int[length]; // index of the smallest tail of each run length
+		int[] previous = new int[length];
+		int runs = 0;
+		for (int i = 0; i < length; i++) {
+			int low = 0;
+			int high = runs;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (values[tails[middle]] < values[i]) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			previous[i] = (low > 0) ? tails[low - 1] : -1;
+			tails[low] = i;
+			if (low == runs) {
+				runs++;
+			}
+		}
+		boolean[] marked = new boolean[length];
+		for (int i = (runs > 0) ? tails[runs - 1] : -1; i >= 0; i = previous[i]) {
+			marked[i] = true;
+		}
+		return marked;
+	}
+
+	private void writeChange (int change, String category, int key, int value) {
+		this.changeCount++;
+		if (this.json) {
+			this.out.write("{\"change\":\"" + CHANGES[change] + "\",\"category\":");
+			ProfileJsonWriter.writeString(this.out, category);
+			this.out.write(",\"key\":");
+			ProfileJsonWriter.writeString(this.out, this.symbols.get(key));
+			this.out.write(",\"value\":");
+			ProfileJsonWriter.writeString(this.out, this.symbols.get(value));
+			this.out.write("}\n");
+		} else {
+			this.out.write(SIGNS[change] + " " + category + " " + this.symbols.get(key) + " " + this.symbols.get(value) + "\n");
+		}
+	}
+
+}
@@ -0,0 +1,158 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * Everything merged so far: category -> key -> values, all keys and values as
+ * SymbolTable ids, with keys in the order they were first set. Each category
+ * is a PersistentKeyMap, so setting a key makes a new version of its category
+ * in O(log n) and leaves the old one as it was; the map of the (few)
+ * categories is copied before it is first written after a snapshot. Taking a
+ * snapshot() is O(1), and the environment it returns can be merged into on its
+ * own, or read from any thread while this one goes on changing. Like its
+ * FlagDictionary, an environment itself is only merged into by one thread.
+ */
+class ProfileEnvironment {
+
+	private HashMap<String,PersistentKeyMap> variables = new HashMap<String,PersistentKeyMap>();
+	private boolean shared = false; // variables is also another environment's, so copy it before writing
+	private SymbolTable symbols = null; // of the ParsedFileCache merged from
+	private FlagDictionary flags = null; // numbers the USE flags this environment stacks; made when first asked for
+	private Provenance provenance = null; // optional, where each value came from
+
+	public ProfileEnvironment (SymbolTable symbols) {
+		this.symbols = symbols;
+	}
+
+	public SymbolTable getSymbols () {
+		return this.symbols;
+	}
+
+	public FlagDictionary getFlagDictionary () {
+		if (this.flags == null) {
+			this.flags = new FlagDictionary(this.symbols);
+		}
+		return this.flags;
+	}
+
+	/**
+	 * An environment holding the same values, that can be merged into without
+	 * touching this one (and the other way round). Nothing is copied until one
+	 * of them is written to, and then only the map of categories. Flag numbers
+	 * are not kept between merges, so the snapshot numbers its own; provenance
+	 * is not carried over.
+	 */
+	public ProfileEnvironment snapshot () {
+		ProfileEnvironment snapshot = new ProfileEnvironment(this.symbols);
+		snapshot.variables = this.variables;
+		snapshot.shared = true;
+		this.shared = true;
+		return snapshot;
+	}
+
+	public void setProvenance (Provenance provenance) {
+		this.provenance = provenance;
+	}
+	public Provenance getProvenance () {
+		return this.provenance;
+	}
+
+	public int[] getValueIds (String category, int key) {
+		PersistentKeyMap currCategory = this.variables.get(category);
+		if (currCategory == null) { return new int[0]; }
+
+		int[] values = currCategory.get(key);
+		if (values == null) { values = new int[0]; }
+		return values;
+	}
+
+	public PersistentKeyMap getCategoryIds (String category) {
+		PersistentKeyMap currCategory = this.variables.get(category);
+		if (currCategory == null) { currCategory = PersistentKeyMap.EMPTY; }
+		return currCategory;
+	}
+
+	public void setCategoryIds (String category, PersistentKeyMap currCategory) {
+		if (this.shared) {
+			this.variables = new HashMap<String,PersistentKeyMap>(this.variables);
+			this.shared = false;
+		}
+		this.variables.put(category, currCategory);
+	}
+
+	public Set<String> getCategoryNames () {
+		return Collections.unmodifiableSet(this.variables.keySet());
+	}
+
+	// Everything below turns ids back into Strings, for output
+
+	public void setVars (String category, String key, Vector<String> value) {
+		this.setCategoryIds(category, this.getCategoryIds(category).with(this.symbols.intern(key), this.symbols.intern(value.toArray(new String[value.size()]))));
+	}
+
+	public Vector<String> getVars (String category, String key) {
+		int keyId = this.symbols.find(key); // asking about a key never adds it
+		if (keyId < 0) { return new Vector<String>(); }
+		return this.toVector(this.getValueIds(category, keyId));
+	}
+
+	public HashMap<String,Vector<String>> getCategoryKeys (String category) {
+		HashMap<String,Vector<String>> currCategory = new HashMap<String,Vector<String>>();
+		for (Map.Entry<Integer,int[]> key: this.getCategoryIds(category).entrySet()) {
+			currCategory.put(this.symbols.get(key.getKey()), this.toVector(key.getValue()));
+		}
+		return currCategory;
+	}
+	
+	public HashMap<String,HashMap<String,Vector<String>>> getCategories () {
+		HashMap<String,HashMap<String,Vector<String>>> categories = new HashMap<String,HashMap<String,Vector<String>>>();
+		for (String category: this.variables.keySet()) {
+			categories.put(category, this.getCategoryKeys(category));
+		}
+		return categories;
+	}
+
+	private Vector<String> toVector (int[] ids) {
+		Vector<String> values = new Vector<String>(ids.length);
+		for (int id: ids) {
+			values.add(this.symbols.get(id));
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,646 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+class ProfileFile {
+	
+	public static final int TYPE_IGNORE = 1;
+	public static final int TYPE_2D = 2; // means there is only one lineRule
+	public static final int TYPE_3D = 3; // means there is two lineRules
+	public static final int TYPE_KEYVAL_BASH = 4;
+	public static final int MAX_TYPE = TYPE_KEYVAL_BASH;
+	private int type = TYPE_2D;
+	
+	public static final int NOEXISTS_CAN_BLANK = 1;
+	public static final int NOEXISTS_CAN_IGNORE = 2;
+	public static final int MAX_NOEXISTS = (NOEXISTS_CAN_IGNORE*2)-1;
+	private boolean noExistsCanBlank = false;
+	private boolean noExistsCanIgnore = false;
+	
+	public static final int EXCEPT_NO_BLANK = 1;
+	public static final int EXCEPT_NO_COMMENT = 2;
+	public static final int EXCEPT_NO_LINE_CONT = 4;
+	public static final int MAX_EXCEPT = (EXCEPT_NO_LINE_CONT*2)-1;
+	private boolean exceptNoBlank = false;
+	private boolean exceptNoComment = false;
+	private boolean exceptNoLineCont = false;
+	
+	// lineRule[][0]
+	public static final int LINEPIECE_PREFIX_NONE = 1;
+	public static final int LINEPIECE_PREFIX_MINUS = 2; // It's important MINUS is here so it doesn't mess up regexp with ranges (which use hyphens)
+	public static final int LINEPIECE_PREFIX_PLUS = 4;
+	public static final int LINEPIECE_PREFIX_ASTERIK = 8;
+	public static final int LINEPIECE_PREFIX_SPECIAL_ONLY = 16;
+	public static final String LINEPIECE_PREFIX_ALL = "-+*";
+	public static final int MAX_LINE_PREFIX = (LINEPIECE_PREFIX_SPECIAL_ONLY*2)-1;
+	// lineRule[][1]
+	public static final int LINEPIECE_TYPE_NUMBER = 1;
+	public static final int LINEPIECE_TYPE_STRING = 2;
+	public static final int LINEPIECE_TYPE_PACKAGE = 3;
+	public static final int LINEPIECE_TYPE_FLAG = 4; // a USE flag, stacked through the environment's FlagDictionary
+	public static final int MAX_LINE_KEY = LINEPIECE_TYPE_FLAG;
+	private LinePieceRule[] pieceRules = null; // one decoded rule per lineRule
+	
+	public static final int LIST_KEY = SymbolTable.LIST; // the key of every 2D file
+	
+	public static final int INHERIT_NONE = 1;
+	public static final int INHERIT_PARENT = 2;
+	public static final int INHERIT_NO_APPEND = 4;
+	public static final int INHERIT_APPEND_SPECIAL_ONLY = 8;
+	public static final int MAX_INHERIT = (INHERIT_APPEND_SPECIAL_ONLY*2)-1;
+	private boolean inherits = false;
+	private boolean inheritsCanAppend = true;
+	private boolean inheritsCanAppendSpecialOnly = false;
+	
+	public static final int DEPRECATED_NO = 1;
+	public static final int DEPRECATED_YES = 2;
+	public static final int MAX_DEPRECATED = DEPRECATED_YES;
+	private int deprecation = DEPRECATED_NO;
+	
+	private String path = "";
+	private String profilePath = "";
+	private String fileName = "";
+	private int eapi = 0;
+	private int mergeCount = 0; // what the last apply() did, for ResolutionStats
+	private int warningCount = 0;
+	
+	private boolean verbose = false;
+	private boolean showMinus = false;
+	private String search = "";
+	
+	public ProfileFile (String path, int type, int fileNonExistanceRules, int disallowedExceptions, int[][] lineRules, int inheritanceRules, int pmsDeprecationRules, boolean verbose, boolean showMinus, String search) {
+		if (path != null && !path.equals("")) {
+			this.path = path;
+			this.fileName = new File(path).getName();
+			this.profilePath = new File(path).getParent();
+			if (this.profilePath == null) { this.profilePath = "."; }
+		} else {
+			throw new IllegalArgumentException ("Empty path");
+		}
+		this.verbose = verbose;
+		this.showMinus = showMinus;
+		this.search = search;
+		if (type > 0 && type <= MAX_TYPE) {
+			this.type = type;
+		} else {
+			throw new IllegalArgumentException ("For path " + path + ", bad file type: " + type);
+		}
+		while (fileNonExistanceRules > 0) {
+			if (fileNonExistanceRules >= NOEXISTS_CAN_IGNORE) {
+					this.noExistsCanIgnore = true;
+					fileNonExistanceRules -= NOEXISTS_CAN_IGNORE;
+			} else if (fileNonExistanceRules >= NOEXISTS_CAN_BLANK) {
+					this.noExistsCanBlank = true;
+					fileNonExistanceRules -= NOEXISTS_CAN_BLANK;
+			} else {
+					throw new IllegalArgumentException ("For path " + path + ", bad rule number for non-existance rules: " + fileNonExistanceRules);
+			}
+		}
+		while (disallowedExceptions > 0) {
+			if (disallowedExceptions >= EXCEPT_NO_LINE_CONT) {
+				this.exceptNoLineCont = true;
+				disallowedExceptions -= EXCEPT_NO_LINE_CONT;
+			} else if (disallowedExceptions >= EXCEPT_NO_COMMENT) {
+				this.exceptNoComment = true;
+				disallowedExceptions -= EXCEPT_NO_COMMENT;
+			} else if (disallowedExceptions >= EXCEPT_NO_BLANK) {
+				this.exceptNoBlank = true;
+				disallowedExceptions -= EXCEPT_NO_BLANK;
+			} else {
+				throw new IllegalArgumentException ("For path " + path + ", bad rule number for disallowed exceptions: " + disallowedExceptions);
+			}
+		}
+		if (lineRules.length > 0) {
+			for (int i = 0; i < lineRules.length; i++) {
+				if (lineRules[i].length < 2) {
+					throw new IllegalArgumentException ("For path " + path + ", line part #" + i + " does not have the proper number of line rules: " + lineRules[i].length);
+				}
+			}
+			this.pieceRules = new LinePieceRule[lineRules.length];
+			for (int i = 0; i < lineRules.length; i++) {
+				this.pieceRules[i] = new LinePieceRule(path, i, this.type, lineRules[i]);
+			}
+		} else {
+			throw new IllegalArgumentException ("For path " + path + ", there are no line rules");
+		}
+		while (inheritanceRules > 0) {
+			if (inheritanceRules >= INHERIT_APPEND_SPECIAL_ONLY) {
+				this.inheritsCanAppendSpecialOnly = true;
+				inheritanceRules -= INHERIT_APPEND_SPECIAL_ONLY;
+			} else if (inheritanceRules >= INHERIT_NO_APPEND) {
+				this.inheritsCanAppend = false;
+				inheritanceRules -= INHERIT_NO_APPEND;
+			} else if (inheritanceRules >= INHERIT_PARENT) {
+				this.inherits = true;
+				inheritanceRules -= INHERIT_PARENT;
+			} else if (inheritanceRules >= INHERIT_NONE) {
+				this.inherits = false;
+				inheritanceRules -= INHERIT_NONE;
+			} else {
+				throw new IllegalArgumentException ("For path " + path + ", bad rule number for inheritance: " + inheritanceRules);
+			}
+		}
+		if (deprecation > 0 && deprecation <= MAX_DEPRECATED) {
+			this.deprecation = deprecation;
+		} else {
+			throw new IllegalArgumentException ("For path " + path + ", bad rule number for deprecation: " + deprecation);
+		}
+	}
+	
+	public void mergeToEnvironment (ProfileEnvironment environment) throws FileNotFoundException, IOException {
+		Diagnostics diagnostics = new Diagnostics(System.err);
+		try {
+			this.apply(this.parse(environment.getSymbols(), diagnostics), environment, diagnostics);
+		} finally {
+			diagnostics.flush();
+		}
+	}
+	
+	/**
+	 * Notices that diagnostics would drop are left out, without working out
+	 * their details.
+	 */
+	public ParsedProfileFile parse (SymbolTable symbols, Diagnostics diagnostics) throws IOException {
+		ParsedProfileFile parsed = new ParsedProfileFile();
+		
+		// Open file
+		ProfileFileScanner scanner = null;
+		boolean blankFile = false;
+		try {
+			scanner = ProfileFileScanner.read(path);
+			parsed.setByteCount(scanner.getByteCount());
+		} catch (FileNotFoundException e) {
+			if (verbose) parsed.addNotice(Diagnostics.FILE_MISSING, -1, null);
+			if (this.noExistsCanBlank) {
+				blankFile = true;
+				scanner = ProfileFileScanner.blank();
+			} else if (this.noExistsCanIgnore) {
+				parsed.setStatus(ParsedProfileFile.STATUS_IGNORED);
+				return parsed; // we don't exist
+			} else {
+				parsed.setStatus(ParsedProfileFile.STATUS_MISSING);
+				return parsed;
+			}
+		}
+		int lineNum = 0;
+		
+		while (true) {
+			
+			// Read a line
+			scanner.startLine();
+			while (true) { // we allow for line continuations. Loop until full line is gathered
+				boolean fileHasEnded = false;
+				if (!blankFile) { // we're dealing with an empty/non-existant file, so skip reading
+					lineNum++;
+					fileHasEnded = !scanner.appendNextLine(); // Handle EOF gracefully
+				}
+				
+				// Only continue if we have more data (blank files get to loop once; see end of loop)
+				if (fileHasEnded && scanner.isLineEmpty()) {
+					return parsed;
+				}
+				
+				int commentIndex = scanner.findComment();
+				if (commentIndex > -1) { // comment cancels even line continuation so it comes first
+					if (this.exceptNoComment) {
+						parsed.addNotice(Diagnostics.COMMENT_NOT_ALLOWED, lineNum, null);
+					} else {
+						scanner.cutLine(commentIndex); // Cut out comment // PMS 5.2.5 // Gentoo bug #326399: we're assuming all files with line continuation use these rules
+						if (scanner.isLineEmpty()) {
+							continue; // allowable comment line with no data but a comment; no need to parse it
+						}
+					}
+				}
+				boolean escapedNewline = scanner.lineEndsWith('\\');
+				if (escapedNewline || (this.type == this.TYPE_KEYVAL_BASH && !scanner.lineEndsWith('"') && !fileHasEnded)) { // line continuation // PMS 5.2.5 // // Gentoo bug #326399: we're assuming all files with line continuation use these rules
+					if (this.exceptNoLineCont) {
+						parsed.addNotice(Diagnostics.CONTINUATION_NOT_ALLOWED, lineNum, null);
+					} else {
+						if (escapedNewline) {
+							scanner.cutLine(scanner.getLineEnd() - 1);
+						}
+						continue; // we need another line first! (an unclosed quote at the end of the file is reported below)
+					}
+				}
+				
+				if (scanner.isLineEmpty() && !blankFile) { // illegal blank lines caught here
+					if (this.exceptNoBlank) { // blank lines aren't supposed to even exist
+						parsed.addNotice(Diagnostics.BLANK_NOT_ALLOWED, lineNum, null);
+					}
+					continue; // skip the blanks
+				}
+				break; // done with line continuations
+			}
+			int lineStart = scanner.getLineStart();
+			int lineEnd = scanner.getLineEnd();
+			
+			if (!this.search.equals("") && diagnostics.isEnabled(Diagnostics.SEARCH_FOUND) && scanner.contains(this.search, lineStart, lineEnd)) {
+				parsed.addNotice(Diagnostics.SEARCH_FOUND, lineNum, scanner.getLine());
+			}
+			
+			scanner.clearTokens();
+			int pieceCount;
+			if (this.type == TYPE_KEYVAL_BASH) { // strip the bash to a simple 3D format
+				
+				// This entire block uses PMS 5.2.4
+				
+				// If there's no room for a variable name, there is no variable name, and that's bad.
+				int equalsIndex = scanner.indexOf('=', lineStart, lineEnd);
+				int nameStart = scanner.trimStart(lineStart, Math.max(equalsIndex, lineStart));
+				int nameEnd = scanner.trimEnd(nameStart, Math.max(equalsIndex, lineStart));
+				if (equalsIndex - lineStart < 1 || nameStart == nameEnd) {
+					parsed.addNotice(Diagnostics.NO_VARIABLE_NAME, lineNum, null);
+					continue;
+				}
+				
+				// Quotes are a big deal. Syntax is a big deal.
+				int valueStart = scanner.trimStart(equalsIndex + 1, lineEnd);
+				int valueEnd = scanner.trimEnd(valueStart, lineEnd);
+				if (valueEnd - valueStart < 2 || scanner.charAt(valueStart) != '"' || scanner.charAt(valueEnd - 1) != '"') {
+					parsed.addNotice(Diagnostics.UNQUOTED_VARIABLE, lineNum, null);
+					continue;
+				}
+				
+				// cut out the quotes.
+				valueStart = scanner.trimStart(valueStart + 1, valueEnd - 1);
+				valueEnd = scanner.trimEnd(valueStart, valueEnd - 1);
+
+				// Some key validation
+				boolean validName = true;
+				for (int i = nameStart; i < nameEnd; i++) {
+					char c = scanner.charAt(i);
+					if (!((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_')) { // PMS 5.2.4
+						validName = false;
+					}
+				}
+				if (!validName && diagnostics.isEnabled(Diagnostics.INVALID_VARIABLE_NAME)) {
+					parsed.addNotice(Diagnostics.INVALID_VARIABLE_NAME, lineNum, scanner.getText(nameStart, nameEnd));
+				}
+				char first = scanner.charAt(nameStart);
+				if (!((first >= 'a' && first <= 'z') || (first >= 'A' && first <= 'Z')) && diagnostics.isEnabled(Diagnostics.INVALID_VARIABLE_START)) { // PMS 5.2.4
+					parsed.addNotice(Diagnostics.INVALID_VARIABLE_START, lineNum, scanner.getText(nameStart, nameEnd));
+				}
+				
+				// the key becomes the first piece, just like the regular 3D format
+				scanner.tokenize(nameStart, nameEnd);
+				pieceCount = scanner.tokenize(valueStart, valueEnd); // Gentoo bug #326399: assuming tabs and spaces deliminate values
+			}
+			else { // everyone else is easy to parse
+				pieceCount = scanner.tokenize(lineStart, lineEnd); // PMS 5.2.5 // Gentoo bug #326399: we're assuming all files with line continuation use these rules
+			}
+			
+			int[] pieces;
+			if (this.type == TYPE_2D) { // TYPE_2D only wants one piece.
+				if (pieceCount > 1) {
+					parsed.addNotice(Diagnostics.SPACES_IN_2D, lineNum, null);
+				}
+				pieces = new int[]{scanner.getLineId(symbols)};
+			} else {
+				if (pieceCount < 1) {
+					pieces = new int[]{symbols.intern("")}; // there needs to be at least one loop
+				} else {
+					pieces = scanner.getTokenIds(symbols);
+				}
+				if (pieces.length < 2) { // Everyone else wants at least two.
+					if (pieceCount > 0 && this.type == TYPE_KEYVAL_BASH) {
+						// there's a "variable=", but then inside the quotes immediately following there are no spaces. This is fine.
+					} else {
+						parsed.addNotice(Diagnostics.NO_SPACES_IN_3D, lineNum, null);
+					}
+				}
+			}
+			
+			parsed.addLine(lineNum, pieces);
+			
+			if (blankFile && scanner.isLineEmpty()) {
+				// single loop execution is done
+				return parsed;
+			}
+		}
+	}
+	
+	public void apply (ParsedProfileFile parsed, ProfileEnvironment environment, Diagnostics diagnostics) throws FileNotFoundException {
+		SymbolTable symbols = environment.getSymbols(); // parsed must be from the same one
+		
+		// Discern EAPI
+		int[] eapiData = environment.getValueIds("eapi", LIST_KEY);
+		if (eapiData.length > 0) {
+			try {
+				this.eapi = Integer.valueOf(symbols.get(eapiData[0]));
+			} catch (NumberFormatException e) {
+				// ignore, just use default // PMS 5.2.2
+			}
+		}
+		
+		this.mergeCount = 0;
+		this.warningCount = 0;
+		
+		Provenance provenance = environment.getProvenance();
+		int fileId = -1;
+		int categoryId = -1;
+		if (provenance != null) {
+			fileId = provenance.getFileId(this.path);
+			categoryId = symbols.intern(this.fileName);
+		}
+		
+		// No inheritance? Then reset it.
+		if (this.inherits == false) {
+			environment.setCategoryIds(this.fileName, PersistentKeyMap.EMPTY);
+			if (provenance != null) {
+				provenance.record(fileId, 0, Provenance.RESET, categoryId, -1, -1, -1, -1);
+			}
+		}
+		
+		int notice = 0;
+		if (parsed.getStatus() == ParsedProfileFile.STATUS_IGNORED) {
+			parsed.reportNotices(diagnostics, this.path, parsed.getLineCount(), notice);
+			return; // we don't exist
+		} else if (parsed.getStatus() == ParsedProfileFile.STATUS_MISSING) {
+			parsed.reportNotices(diagnostics, this.path, parsed.getLineCount(), notice);
+			throw new FileNotFoundException ("Path not found, and does not appear optional: " + this.path);
+		}
+
+		// These variables sometimes need to exist beyond a line
+		PersistentKeyMap fileData = environment.getCategoryIds(this.fileName);
+		String key = "";
+		int keyId = -1;
+		boolean haveKey = false;
+		StackedValues keyValues = null; // what this file added to key; null until it adds something
+		
+		for (int l = 0; l < parsed.getLineCount(); l++) {
+			notice = parsed.reportNotices(diagnostics, this.path, l, notice);
+			
+			int[] pieces = parsed.getPieces(l);
+			int lineNum = parsed.getLineNumber(l);
+			
+			for (int i = 0; i < pieces.length; i++) {
+				int pieceId = pieces[i];
+				String piece = symbols.get(pieceId);
+				
+				// Key == 0, value == 1
+				int linePiece = 0;
+				if (i > 0) { linePiece = 1; }
+				
+				// The rules for this piece were decoded when the file was set up
+				LinePieceRule rule = this.pieceRules[linePiece];
+				int lineType = rule.getType();
+				if (lineType == LINEPIECE_TYPE_PACKAGE && this.type == TYPE_KEYVAL_BASH) {
+					this.warn(diagnostics, Diagnostics.PACKAGE_IN_BASH, lineNum, null);
+				}
+				
+				String prefixes = rule.getPrefixes();
+				if (rule.isPrefixSpecialOnly() && !this.isSpecialKey(key)) { // If only special variables are allowed to have prefixes, delete the prefixes variable so no prefix is recognized // PMS 5.3.1
+					prefixes = "";
+				}
+				
+				// Strip the prefix, and store it. Also store the line piece without its prefix.
+				String pieceWithoutPrefix = piece;
+				String piecePrefix = "";
+				if (!prefixes.equals("")) {
+					int prefixLength = rule.getPrefixLength(piece); // snag the prefix at the beginning
+					piecePrefix = (prefixLength > 0) ? piece.substring(0, prefixLength) : piece;
+					if (LinePieceRule.isOnlyPrefixes(piece)) { // if there is a prefix
+						if (prefixLength == 0) {
+							this.warn(diagnostics, Diagnostics.INVALID_PREFIX, lineNum, piece);
+						} else {
+							pieceWithoutPrefix = piece.substring(prefixLength, piece.length());
+							if (pieceWithoutPrefix.length() > 0 && LinePieceRule.isAnyPrefix(pieceWithoutPrefix.charAt(0))) { // still!?
+								this.warn(diagnostics, Diagnostics.EXTRA_PREFIX, lineNum, piece);
+							}
+						}
+					} else if (!rule.canIgnorePrefix()) { // if there is no prefix but we want one
+						this.warn(diagnostics, Diagnostics.MISSING_PREFIX, lineNum, piece);
+					}
+				}
+				
+				// Some special handling of number formats.
+				if (lineType == LINEPIECE_TYPE_NUMBER) {
+					if (this.exceptNoBlank && pieceWithoutPrefix.equals("")) { // Special scenario: allow number zero where blank is not allowed in a numeric field
+						pieceWithoutPrefix = "0";
+						piece += "0";
+						pieceId = symbols.intern(piece);
+					} else {
+						try {
+							Double.valueOf(pieceWithoutPrefix);
+						} catch (NumberFormatException e) {
+							this.warn(diagnostics, Diagnostics.NOT_NUMERIC, lineNum, piece);
+						}
+					}
+				}
+				
+				// Package atoms are split up by PackageAtom when something asks for them (see PackageIndex)
+				
+				if (linePiece == 0 && this.type != TYPE_2D) { // first piece, the key. We reset values for each line, but only in a 3D array.
+					// This means a change in key, so...
+					// Save data using current key before we update key to new one and reset data
+					if (haveKey) {
+						int[] values = new int[0];
+						int[] existingValues = new int[0];
+						if (keyValues != null) {
+							values = keyValues.getAdded();
+							existingValues = keyValues.toArray();
+						} else if (fileData.containsKey(keyId)) {
+							existingValues = fileData.get(keyId);
+						} // otherwise we'll start a new one
+						// Append previously collected data (if any exists and we're allowed)
+						if (this.inheritsCanAppend && (!this.inheritsCanAppendSpecialOnly || this.isSpecialKey(key))) {
+							values = this.mergeValues(symbols, existingValues, values, prefixes);
+						}
+					
+						fileData = fileData.with(keyId, values);
+					}
+					haveKey = true;
+					keyValues = null; // reset our data
+
+					// We located our key! Save it for later!
+					key = pieceWithoutPrefix;
+					keyId = (pieceWithoutPrefix == piece) ? pieceId : symbols.intern(pieceWithoutPrefix);
+					
+					if (!piecePrefix.equals("")) {
+						this.warn(diagnostics, Diagnostics.PREFIXED_KEY, lineNum, piece);
+					}
+				} else {
+					// First run for TYPE_2D.
+					// This type is always on linePiece 1, functionally, so values needs only to be set once for the duration of the file
+					if (!haveKey) {
+						haveKey = true;
+						key = "list"; // Key is always the same for 2D formats, making it store 2D in a 3D array.
+						keyId = LIST_KEY;
+					}
+					
+					// Find values that need to append to our growing list
+					int[] appendToKeyValues;
+					boolean expanded = false;
+					
+					if (pieceWithoutPrefix.startsWith("$") && this.type == TYPE_KEYVAL_BASH) {  // it's actually a variable, so expand it. // PMS 5.2.4
+						String variableName = pieceWithoutPrefix.substring(1, pieceWithoutPrefix.length()).replace("{","").replace("}",""); // cut off the $, and remove any curly brackets, since it means the same thing with or without
+
+						// Expand variable to that variable's value(s)
+						int[] existingValues = new int[0];
+						if (keyValues != null && variableName.equals(key)) {
+							existingValues = keyValues.toArray(); // not stored in fileData until the key is done
+						} else if (fileData.containsKey(symbols.intern(variableName))) {
+							existingValues = fileData.get(symbols.intern(variableName));
+						}
+						appendToKeyValues = existingValues;
+						expanded = true;
+					} else {
+						// Someone trying to be fancy?
+						if (pieceWithoutPrefix.startsWith("$")) {
+							this.warn(diagnostics, Diagnostics.VARIABLE_NOT_ALLOWED, lineNum, piece);
+						}
+						appendToKeyValues = new int[]{pieceId};
+					}
+					
+					if (keyValues == null) {
+						// Append if we're allowed to, otherwise replace.
+						int[] existingValues = null;
+						if (this.inheritsCanAppend && (!this.inheritsCanAppendSpecialOnly || this.isSpecialKey(key))) {
+							// Get the existing values that we'll append to
+							existingValues = new int[0];
+							if (fileData.containsKey(keyId)) {
+								existingValues = fileData.get(keyId);
+							} // otherwise we'll start a new one
+						}
+						FlagDictionary flags = null;
+						if (lineType == LINEPIECE_TYPE_FLAG || (this.type == TYPE_KEYVAL_BASH && key.equals("USE"))) {
+							flags = environment.getFlagDictionary();
+						}
+						keyValues = new StackedValues(symbols, existingValues, prefixes, this.showMinus, flags);
+						if (provenance != null && existingValues == null) {
+							provenance.record(fileId, lineNum, Provenance.REPLACE, categoryId, keyId, -1, -1, -1);
+						}
+					}
+					for (int value: appendToKeyValues) {
+						keyValues.add(value);
+					}
+					if (provenance != null) {
+						for (int value: appendToKeyValues) {
+							int kind = expanded ? Provenance.EXPAND : (StackedValues.hasMinusPrefix(symbols.get(value), prefixes) ? Provenance.NEGATE : Provenance.SET);
+							provenance.record(fileId, lineNum, kind, categoryId, keyId, value, StackedValues.stripPrefixes(symbols, value, LINEPIECE_PREFIX_ALL), pieceId);
+						}
+					}
+					this.mergeCount += appendToKeyValues.length;
+				}
+			}
+			
+			environment.setCategoryIds(this.fileName, fileData);
+		}
+		if (keyValues != null) {
+			environment.setCategoryIds(this.fileName, fileData.with(keyId, keyValues.toArray()));
+		}
+		parsed.reportNotices(diagnostics, this.path, parsed.getLineCount(), notice);
+	}
+	
+	private int[] mergeValues (SymbolTable symbols, int[] existingValues, int[] keyValues, String prefixesToIgnore) {
+		// Values in keyValues override existing values with the same unprefixed form
+		HashSet<Integer> overridden = new HashSet<Integer>();
+		for (int newValue: keyValues) {
+			overridden.add(StackedValues.stripPrefixes(symbols, newValue, prefixesToIgnore));
+		}
+		
+		int[] values = new int[existingValues.length + keyValues.length];
+		int size = 0;
+		for (int existingValue: existingValues) {
+			if (!overridden.contains(StackedValues.stripPrefixes(symbols, existingValue, prefixesToIgnore))) {
+				values[size++] = existingValue;
+			}
+		}
+		for (int newValue: keyValues) {
+			if (this.showMinus || !StackedValues.hasMinusPrefix(symbols.get(newValue), prefixesToIgnore)) {
+				values[size++] = newValue; // a - prefix negates but does not appear in the list
+			}
+		}
+		return Arrays.copyOf(values, size);
+	}
+	
+	private void warn (Diagnostics diagnostics, int code, int lineNum, String piece) {
+		diagnostics.report(code, this.path, lineNum, piece);
+		this.warningCount++;
+	}
+	
+	private boolean isSpecialKey (String key) {
+		// This entire block is PMS 5.3.1
+		if (
+			key.equals("USE")
+			|| key.equals("USE_EXPAND")
+			|| key.equals("USE_EXPAND_HIDDEN")
+			|| key.equals("CONFIG_PROTECT")
+			|| key.equals("CONFIG_PROTECT_MASK")
+			) {
+			return true;
+		} else if (eapi == 4 && (
+			key.equals("IUSE_IMPLICIT")
+			|| key.equals("USE_EXPAND_IMPLICIT")
+			|| key.equals("USE_EXPAND_UNPREFIXED")
+			) ) {
+			return true;
+		} else {
+			return false;
+		}
+	}
+	
+	public String getPath () {
+		return this.path;
+	}
+	public String getParseSignature (Diagnostics diagnostics) { // everything parse() depends on besides the file itself
+		return this.type + "," + this.noExistsCanBlank + "," + this.noExistsCanIgnore + "," + this.exceptNoBlank + "," + this.exceptNoComment + "," + this.exceptNoLineCont + "," + this.verbose + "," + this.search + "," + diagnostics.getThreshold();
+	}
+	public String getProfilePath () {
+		return this.profilePath;
+	}
+	public int getEAPI () {
+		return this.eapi;
+	}
+	public String getFileName () {
+		return this.fileName;
+	}
+	public int getType () {
+		return this.type;
+	}
+	public int getPieceType (int linePiece) {
+		return this.pieceRules[Math.min(linePiece, this.pieceRules.length - 1)].getType();
+	}
+	public int getMergeCount () { // values the last apply() stacked
+		return this.mergeCount;
+	}
+	public int getWarningCount () { // warnings the last apply() printed, besides the file's notices
+		return this.warningCount;
+	}
+	
+}
@@ -0,0 +1,343 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Walks the contents of one profile file a physical line at a time, gathering
+ * the logical line (continuations included) in a reusable buffer. Comments,
+ * continuations and quotes are found by scanning that buffer, and splitting on
+ * tabs and spaces only records offsets; the pieces that end up in a
+ * ParsedProfileFile are interned straight from the buffer, so a String is only
+ * created for text the SymbolTable has not seen yet.
+ *
+ * Files are read through a FileChannel: mapped when they are large, otherwise
+ * read in one go. Nearly every profile file is plain ASCII, and then its bytes
+ * are scanned as they are; anything else is decoded with the platform charset
+ * first, as FileReader would.
+ *
+ * Offsets passed to and returned from this class index the line buffer; they
+ * stay valid until the next startLine().
+ */
+class ProfileFileScanner {
+
+	public static final int MAP_THRESHOLD = 64 * 1024; // bytes; smaller files are read instead of mapped
+
+	private ByteBuffer bytes = null; // set when the file is ASCII
+	private CharBuffer chars = null; // set otherwise
+	private int length = 0;
+	private int position = 0;
+	private long byteCount = 0; // as read from disk, before any decoding
+
+	private char[] line = new char[256];
+	private int lineStart = 0;
+	private int lineEnd = 0;
+	private int commentIndex = -1; // first '#' in the line, if any
+	private int commentScanned = 0; // everything before this has been searched for '#'
+
+	private int[] tokens = new int[32]; // start and end of each token
+	private int tokenCount = 0;
+
+	private ProfileFileScanner (ByteBuffer bytes, CharBuffer chars, long byteCount) {
+		this.bytes = bytes;
+		this.chars = chars;
+		this.length = (bytes != null) ? bytes.limit() : chars.limit();
+		this.byteCount = byteCount;
+	}
+
+	/**
+	 * A scanner for a file that doesn't exist but may be treated as blank.
+	 */
+	public static ProfileFileScanner blank () {
+		return new ProfileFileScanner(ByteBuffer.allocate(0), null, 0);
+	}
+
+	public static ProfileFileScanner read (String path) throws FileNotFoundException, IOException {
+		FileInputStream in = new FileInputStream(path); // same FileNotFoundException as FileReader, directories included
+		try {
+			FileChannel channel = in.getChannel();
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException ("File " + path + " is too large to be a profile file");
+			}
+			ByteBuffer bytes;
+			if (size > MAP_THRESHOLD) {
+				bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			} else {
+				bytes = ByteBuffer.allocate((int)size);
+				while (bytes.hasRemaining() && channel.read(bytes) >= 0) {
+					// keep reading
+				}
+				bytes.flip();
+			}
+			if (ProfileFileScanner.isAscii(bytes)) {
+				return new ProfileFileScanner(bytes, null, size);
+			}
+			return new ProfileFileScanner(null, Charset.defaultCharset().decode(bytes), size);
+		} finally {
+			in.close();
+		}
+	}
+
+	public long getByteCount () {
+		return this.byteCount;
+	}
+
+	private static boolean isAscii (ByteBuffer bytes) {
+		String charset = Charset.defaultCharset().name();
+		if (!charset.equals("UTF-8") && !charset.equals("US-ASCII") && !charset.equals("ISO-8859-1")) {
+			return false; // ASCII bytes might not mean ASCII chars
+		}
+		int limit = bytes.limit();
+		for (int i = 0; i < limit; i++) {
+			if (bytes.get(i) < 0) { // high bit set
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private char sourceAt (int i) {
+		return (this.bytes != null) ? (char)this.bytes.get(i) : this.chars.get(i);
+	}
+
+	/**
+	 * Empties the line buffer for a new logical line.
+	 */
+	public void startLine () {
+		this.lineStart = 0;
+		this.lineEnd = 0;
+		this.commentIndex = -1;
+		this.commentScanned = 0;
+	}
+
+	/**
+	 * Appends the next physical line (without its terminator) to the line
+	 * buffer. Lines end at \n, \r or \r\n, like BufferedReader.readLine().
+	 * Returns false, appending nothing, when the file has ended.
+	 */
+	public boolean appendNextLine () {
+		if (this.position >= this.length) {
+			return false;
+		}
+		int end = this.position;
+		char c = 0;
+		while (end < this.length && (c = this.sourceAt(end)) != '\n' && c != '\r') {
+			end++;
+		}
+		int count = end - this.position;
+		if (this.lineEnd + count > this.line.length) {
+			int used = this.lineEnd - this.lineStart;
+			char[] target = this.line;
+			if (used + count > this.line.length) {
+				target = new char[Math.max(this.line.length * 2, used + count)];
+			}
+			System.arraycopy(this.line, this.lineStart, target, 0, used);
+			this.line = target;
+			this.commentScanned -= this.lineStart;
+			if (this.commentIndex > -1) { this.commentIndex -= this.lineStart; }
+			this.lineStart = 0;
+			this.lineEnd = used;
+		}
+		if (this.bytes != null) {
+			for (int i = 0; i < count; i++) {
+				this.line[this.lineEnd + i] = (char)this.bytes.get(this.position + i);
+			}
+		} else {
+			this.chars.get(this.position, this.line, this.lineEnd, count);
+		}
+		this.lineEnd += count;
+		this.position = end;
+		if (this.position < this.length && this.sourceAt(this.position) == '\r') {
+			this.position++;
+		}
+		if (this.position < this.length && this.sourceAt(this.position) == '\n') {
+			this.position++;
+		}
+		return true;
+	}
+
+	public boolean isLineEmpty () {
+		return this.lineStart == this.lineEnd;
+	}
+
+	public int getLineStart () {
+		return this.lineStart;
+	}
+
+	public int getLineEnd () {
+		return this.lineEnd;
+	}
+
+	public boolean lineEndsWith (char c) {
+		return this.lineEnd > this.lineStart && this.line[this.lineEnd - 1] == c;
+	}
+
+	public int getLineId (SymbolTable symbols) {
+		return symbols.intern(this.line, this.lineStart, this.lineEnd);
+	}
+
+	public String getLine () {
+		return new String(this.line, this.lineStart, this.lineEnd - this.lineStart);
+	}
+
+	/**
+	 * Offset of the first '#' in the line, or -1. Only the part of the line
+	 * appended since the last call is searched.
+	 */
+	public int findComment () {
+		if (this.commentIndex < 0) {
+			int i = Math.max(this.commentScanned, this.lineStart);
+			while (i < this.lineEnd && this.line[i] != '#') {
+				i++;
+			}
+			this.commentScanned = i;
+			if (i < this.lineEnd) {
+				this.commentIndex = i;
+			}
+		}
+		return this.commentIndex;
+	}
+
+	/**
+	 * Drops everything from end onwards, then trims the line like String.trim().
+	 */
+	public void cutLine (int end) {
+		this.lineEnd = end;
+		if (this.commentIndex >= end) { this.commentIndex = -1; }
+		this.lineStart = this.trimStart(this.lineStart, this.lineEnd);
+		this.lineEnd = this.trimEnd(this.lineStart, this.lineEnd);
+		if (this.commentScanned > this.lineEnd) { this.commentScanned = this.lineEnd; }
+	}
+
+	public int indexOf (char c, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (this.line[i] == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public boolean contains (String s, int from, int to) {
+		int last = to - s.length();
+		for (int i = from; i <= last; i++) {
+			int j = 0;
+			while (j < s.length() && this.line[i + j] == s.charAt(j)) {
+				j++;
+			}
+			if (j == s.length()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public char charAt (int i) {
+		return this.line[i];
+	}
+
+	public String getText (int from, int to) {
+		return new String(this.line, from, to - from);
+	}
+
+	// Same notion of whitespace as String.trim()
+	public int trimStart (int from, int to) {
+		while (from < to && this.line[from] <= ' ') {
+			from++;
+		}
+		return from;
+	}
+
+	public int trimEnd (int from, int to) {
+		while (to > from && this.line[to - 1] <= ' ') {
+			to--;
+		}
+		return to;
+	}
+
+	public void clearTokens () {
+		this.tokenCount = 0;
+	}
+
+	/**
+	 * Records the runs of text between tabs and spaces in [from, to), the same
+	 * way String.split("[ \t]+") would: a range that starts with a tab or space
+	 * gets an empty first token, unless the range holds nothing else. Returns
+	 * the number of tokens recorded so far.
+	 */
+	public int tokenize (int from, int to) {
+		int i = from;
+		while (i < to && (this.line[i] == ' ' || this.line[i] == '\t')) {
+			i++;
+		}
+		if (i > from && i < to) {
+			this.addToken(from, from);
+		}
+		while (i < to) {
+			int start = i;
+			while (i < to && this.line[i] != ' ' && this.line[i] != '\t') {
+				i++;
+			}
+			this.addToken(start, i);
+			while (i < to && (this.line[i] == ' ' || this.line[i] == '\t')) {
+				i++;
+			}
+		}
+		return this.tokenCount;
+	}
+
+	private void addToken (int start, int end) {
+		if (this.tokenCount * 2 == this.tokens.length) {
+			int[] grown = new int[this.tokens.length * 2];
+			System.arraycopy(this.tokens, 0, grown, 0, this.tokens.length);
+			this.tokens = grown;
+		}
+		this.tokens[this.tokenCount * 2] = start;
+		this.tokens[this.tokenCount * 2 + 1] = end;
+		this.tokenCount++;
+	}
+
+	public int[] getTokenIds (SymbolTable symbols) {
+		int[] pieces = new int[this.tokenCount];
+		for (int i = 0; i < this.tokenCount; i++) {
+			pieces[i] = symbols.intern(this.line, this.tokens[i * 2], this.tokens[i * 2 + 1]);
+		}
+		return pieces;
+	}
+
+}
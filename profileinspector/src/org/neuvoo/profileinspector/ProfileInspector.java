@@ -33,1002 +33,473 @@ package org.neuvoo.profileinspector;
 
 import java.io.*;
 import org.jargp.*;
+import java.util.Arrays;
 import java.util.Vector;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class ProfileInspector {
 
 	private String action = "";
 	private String profile = "";
+	private String base = "";
 	private String search = "";
 	private boolean verbose = false;
 	private boolean minus = false;
+	private boolean parallel = false;
+	private String cache = "";
+	private String listen = "";
+	private String packages = "";
+	private String listFile = "";
+	private String format = "";
+	private boolean stats = false;
+	private String level = "";
 
 	public Profile processProfile () throws ArgumentErrorException, IOException {
 		if (this.action.equals("")) {
 			this.action = "i";
 		}
+		if (!this.level.equals("") && Diagnostics.parseSeverity(this.level) < 0) {
+			throw new ArgumentErrorException ("invalid diagnostics level " + this.level);
+		}
 		
 		if (this.action.equals("i")) {
 			if (this.profile.equals("")) {
 				throw new ArgumentErrorException ("action i requires profile path");
+			} else if (!this.format.equals("") && !this.format.equals("human") && !this.format.equals("json") && !this.format.equals("binary")) {
+				throw new ArgumentErrorException ("invalid output format " + this.format);
 			} else {
-				if (this.verbose) System.out.println("Starting profile investigation at " + this.profile);
+				if (this.verbose) this.getProgress().println("Starting profile investigation at " + this.profile);
+			}
+		} else if (this.action.equals("d")) {
+			if (this.listen.equals("")) {
+				throw new ArgumentErrorException ("action d requires a socket path or port to listen on");
+			}
+			new ProfileServer(this).serve(this.listen);
+			return null; // the server has stopped
+		} else if (this.action.equals("w")) {
+			if (this.profile.equals("")) {
+				throw new ArgumentErrorException ("action w requires profile path");
+			}
+			new ProfileWatcher(this, this.profile, this.verbose).watch();
+			return null; // no longer watching
+		} else if (this.action.equals("u")) {
+			if (this.profile.equals("")) {
+				throw new ArgumentErrorException ("action u requires profile path");
+			}
+			EffectiveUse effectiveUse = new EffectiveUse(this.resolve(this.profile));
+			PrintWriter out = ProfileInspector.openStandardOutput();
+			Diagnostics diagnostics = this.applyLevel(new Diagnostics(System.err));
+			if (!this.packages.equals("")) {
+				effectiveUse.queryAll(new BufferedReader(new StringReader(this.packages.replaceAll("[ \t,]+", "\n"))), out, diagnostics);
+			}
+			if (!this.listFile.equals("")) {
+				BufferedReader packageList = new BufferedReader(new FileReader(this.listFile));
+				try {
+					effectiveUse.queryAll(packageList, out, diagnostics);
+				} finally {
+					packageList.close();
+				}
+			} else if (this.packages.equals("")) {
+				effectiveUse.queryAll(new BufferedReader(new InputStreamReader(System.in)), out, diagnostics);
+			}
+			return null; // answers were printed as they were found
+		} else if (this.action.equals("b")) {
+			if (this.profile.equals("")) {
+				throw new ArgumentErrorException ("action b requires profile path");
+			}
+			Profile profile = this.resolve(this.profile);
+			Provenance provenance = profile.getEnvironment().getProvenance();
+			PrintWriter out = ProfileInspector.openStandardOutput();
+			if (!this.packages.equals("")) {
+				provenance.blameAll(profile.getEnvironment(), new BufferedReader(new StringReader(this.packages)), out);
+			}
+			if (!this.listFile.equals("")) {
+				BufferedReader queryList = new BufferedReader(new FileReader(this.listFile));
+				try {
+					provenance.blameAll(profile.getEnvironment(), queryList, out);
+				} finally {
+					queryList.close();
+				}
+			} else if (this.packages.equals("")) {
+				provenance.blameAll(profile.getEnvironment(), new BufferedReader(new InputStreamReader(System.in)), out);
+			}
+			return null; // answers were printed as they were found
+		} else if (this.action.equals("r")) {
+			if (this.profile.equals("")) {
+				throw new ArgumentErrorException ("action r requires a profile tree path");
+			} else if (!this.format.equals("") && !this.format.equals("human") && !this.format.equals("json")) {
+				throw new ArgumentErrorException ("invalid output format " + this.format + " for action r");
 			}
+			this.resolveTree(this.profile);
+			return null; // every leaf was printed
+		} else if (this.action.equals("c")) {
+			if (this.profile.equals("") || this.base.equals("")) {
+				throw new ArgumentErrorException ("action c requires a profile path and a base profile path");
+			} else if (!this.format.equals("") && !this.format.equals("human") && !this.format.equals("json")) {
+				throw new ArgumentErrorException ("invalid output format " + this.format + " for action c");
+			}
+			Profile[] profiles = this.resolve(new String[] { this.base, this.profile });
+			int changes = new ProfileDiff(ProfileInspector.openStandardOutput(), this.format.equals("json")).compare(profiles[0], profiles[1]);
+			if (this.verbose) System.err.println(changes + " changes from " + this.base + " to " + this.profile);
+			return null; // the changes were printed as they were found
+		} else if (this.action.equals("g")) {
+			if (this.profile.equals("")) {
+				throw new ArgumentErrorException ("action g requires a profile tree path");
+			} else if (!this.format.equals("") && !this.format.equals("human") && !this.format.equals("json")) {
+				throw new ArgumentErrorException ("invalid output format " + this.format + " for action g");
+			}
+			Vector<String> patterns = new Vector<String>();
+			if (!this.search.equals("")) {
+				patterns.add(this.search);
+			}
+			if (!this.listFile.equals("")) {
+				BufferedReader patternList = new BufferedReader(new FileReader(this.listFile));
+				try {
+					TreeSearch.readPatterns(patternList, patterns);
+				} finally {
+					patternList.close();
+				}
+			} else if (this.search.equals("")) {
+				TreeSearch.readPatterns(new BufferedReader(new InputStreamReader(System.in)), patterns);
+			}
+			TreeSearch treeSearch = new TreeSearch(patterns);
+			ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+			try {
+				int hits = treeSearch.search(new File(this.profile), executor, this.format.equals("json"), ProfileInspector.openStandardOutput());
+				if (this.verbose) System.err.println(hits + " hits for " + treeSearch.getPatternCount() + " patterns under " + this.profile);
+			} finally {
+				executor.shutdownNow();
+			}
+			return null; // hits were printed in order as each file was done
 		} else {
 			throw new ArgumentErrorException ("invalid action " + this.action);
 		}
-		return new Profile(this.profile, new ProfileEnvironment(), this.verbose, this.minus, this.search);
+		return this.resolve(this.profile);
 	}
 
-	private static final ParameterDef[] ARG_DEFS = {
-		new StringDef('a', "action", "the action to take with a/the profile"),
-		new StringDef('p', "profile", "the path to the profile to investigate"),
-		new StringDef('s', "search", "search for a string in the profile"),
-		new BoolDef('v', "verbose", "Supress extra information normally printed prior to results"),
-		new BoolDef('m', "minus", "Do not let the minus prefix vanish")
-	};
-
-	public static void main (String args[]) {
-		ProfileInspector profileInspector = new ProfileInspector();
-		Profile resultingProfile = null;
-
-		if (args.length < 1 || args[0].indexOf("help") >= 0) {
-			usage();
-			System.exit(0);
+	public void printProfile (Profile profile) throws IOException {
+		if (this.format.equals("json")) {
+			new ProfileJsonWriter(ProfileInspector.openStandardOutput()).write(profile);
+		} else if (this.format.equals("binary")) {
+			new ProfileBinaryWriter(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 64 * 1024))).write(profile);
 		} else {
-			try {
-				ArgumentProcessor.processArgs(args, ARG_DEFS, profileInspector);
-				resultingProfile = profileInspector.processProfile();
-			} catch (ArgumentErrorException e) {
-				System.err.println("Error processing command-line arguments: " + e.getMessage());
-				usage();
-				System.exit(255);
-			} catch (Exception e) {
-				System.err.println("Error proccessing:");
-				e.printStackTrace();
-				System.exit(1);
-			}
-			
-			System.out.println(resultingProfile.getHumanOutput());
+			PrintWriter out = ProfileInspector.openStandardOutput();
+			profile.writeHumanOutput(out);
+			out.println();
+			out.flush();
 		}
 	}
 
-	public static void usage () {
-		System.out.println("Usage: java ProfileInspector [-a <action>] [options]");
-		System.out.println("");
-		System.out.println("Actions:");
-		System.out.println("    i           Default. Investigate the profile, and print out\n" +
-		                   "                accumulated profile information (requires -p)");
-		System.out.println("");
-		System.out.println("Options:");
-		System.out.println("    -p <path>   The path to the profile to investigate");
-		System.out.println("");
-		System.out.println("    -s <string> Search for any mention of string and report to\n" +
-		                   "                stderr.");
-	}
-
-}
-
-class ProfileEnvironment {
-
-	private HashMap<String,HashMap<String,Vector<String>>> variables = new HashMap<String,HashMap<String,Vector<String>>>();
-
-	public void setVars (String category, String key, Vector<String> value) {
-		HashMap<String,Vector<String>> currCategory = this.variables.get(category);
-
-		if (currCategory == null) { currCategory = new HashMap<String,Vector<String>>(); }
-		currCategory.put(key, value);
-
-		this.variables.put(category, currCategory);
-	}
-
-	public Vector<String> getVars (String category, String key) {
-		HashMap<String,Vector<String>> currCategory = this.variables.get(category);
-		if (currCategory == null) { currCategory = new HashMap<String,Vector<String>>(); }
-
-		Vector<String> values = currCategory.get(key);
-		if (values == null) { values = new Vector<String>(); }
-		return values;
-	}
-
-	public HashMap<String,Vector<String>> getCategoryKeys (String category) {
-		HashMap<String,Vector<String>> currCategory = this.variables.get(category);
-		if (currCategory == null) { currCategory = new HashMap<String,Vector<String>>(); }
-		return currCategory;
-	}
-	
-	public HashMap<String,HashMap<String,Vector<String>>> getCategories () {
-		return this.variables;
-	}
-
-	public void setCategoryKeys (String category, HashMap<String,Vector<String>> currCategory) {
-		this.variables.put(category, currCategory);
+	public Profile resolve (String profilePath) throws IOException {
+		return this.resolve(new String[] { profilePath })[0];
 	}
 
-}
-
-class ProfileFile {
-	
-	public static final int TYPE_IGNORE = 1;
-	public static final int TYPE_2D = 2; // means there is only one lineRule
-	public static final int TYPE_3D = 3; // means there is two lineRules
-	public static final int TYPE_KEYVAL_BASH = 4;
-	public static final int MAX_TYPE = TYPE_KEYVAL_BASH;
-	private int type = TYPE_2D;
-	
-	public static final int NOEXISTS_CAN_BLANK = 1;
-	public static final int NOEXISTS_CAN_IGNORE = 2;
-	public static final int MAX_NOEXISTS = (NOEXISTS_CAN_IGNORE*2)-1;
-	private boolean noExistsCanBlank = false;
-	private boolean noExistsCanIgnore = false;
-	
-	public static final int EXCEPT_NO_BLANK = 1;
-	public static final int EXCEPT_NO_COMMENT = 2;
-	public static final int EXCEPT_NO_LINE_CONT = 4;
-	public static final int MAX_EXCEPT = (EXCEPT_NO_LINE_CONT*2)-1;
-	private boolean exceptNoBlank = false;
-	private boolean exceptNoComment = false;
-	private boolean exceptNoLineCont = false;
-	
-	// lineRule[][0]
-	public static final int LINEPIECE_PREFIX_NONE = 1;
-	public static final int LINEPIECE_PREFIX_MINUS = 2; // It's important MINUS is here so it doesn't mess up regexp with ranges (which use hyphens)
-	public static final int LINEPIECE_PREFIX_PLUS = 4;
-	public static final int LINEPIECE_PREFIX_ASTERIK = 8;
-	public static final int LINEPIECE_PREFIX_SPECIAL_ONLY = 16;
-	public static final String LINEPIECE_PREFIX_ALL = "-+*";
-	public static final int MAX_LINE_PREFIX = (LINEPIECE_PREFIX_SPECIAL_ONLY*2)-1;
-	// lineRule[][1]
-	public static final int LINEPIECE_TYPE_NUMBER = 1;
-	public static final int LINEPIECE_TYPE_STRING = 2;
-	public static final int LINEPIECE_TYPE_PACKAGE = 3;
-	public static final int MAX_LINE_KEY = LINEPIECE_TYPE_PACKAGE;
-	private int[][] lineRules = new int[][]{{LINEPIECE_PREFIX_NONE, LINEPIECE_TYPE_STRING}, {LINEPIECE_PREFIX_NONE, LINEPIECE_TYPE_STRING}};
-	
-	public static final int INHERIT_NONE = 1;
-	public static final int INHERIT_PARENT = 2;
-	public static final int INHERIT_NO_APPEND = 4;
-	public static final int INHERIT_APPEND_SPECIAL_ONLY = 8;
-	public static final int MAX_INHERIT = (INHERIT_APPEND_SPECIAL_ONLY*2)-1;
-	private boolean inherits = false;
-	private boolean inheritsCanAppend = true;
-	private boolean inheritsCanAppendSpecialOnly = false;
-	
-	public static final int DEPRECATED_NO = 1;
-	public static final int DEPRECATED_YES = 2;
-	public static final int MAX_DEPRECATED = DEPRECATED_YES;
-	private int deprecation = DEPRECATED_NO;
-	
-	private String path = "";
-	private String fileName = "";
-	private int eapi = 0;
-	
-	private boolean verbose = false;
-	private boolean showMinus = false;
-	private String search = "";
-	
-	public ProfileFile (String path, int type, int fileNonExistanceRules, int disallowedExceptions, int[][] lineRules, int inheritanceRules, int pmsDeprecationRules, boolean verbose, boolean showMinus, String search) {
-		if (path != null && !path.equals("")) {
-			this.path = path;
-			this.fileName = new File(path).getName();
-		} else {
-			throw new IllegalArgumentException ("Empty path");
+	/**
+	 * Resolves several profiles in turn with one ParsedFileCache, so the files
+	 * of any ancestor they share are read and parsed once. When the first
+	 * parents of two of them lead to the same profile, the closest such
+	 * profile is merged once, and each of them is merged on top of a snapshot
+	 * of it (see Profile), one first parent at a time. Snapshots leave
+	 * provenance behind, so for action b each profile is merged from the root.
+	 */
+	public Profile[] resolve (String[] profilePaths) throws IOException {
+		ExecutorService executor = null;
+		if (this.parallel) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
 		}
-		this.verbose = verbose;
-		this.showMinus = showMinus;
-		this.search = search;
-		if (type > 0 && type <= MAX_TYPE) {
-			this.type = type;
-		} else {
-			throw new IllegalArgumentException ("For path " + path + ", bad file type: " + type);
-		}
-		while (fileNonExistanceRules > 0) {
-			if (fileNonExistanceRules >= NOEXISTS_CAN_IGNORE) {
-					this.noExistsCanIgnore = true;
-					fileNonExistanceRules -= NOEXISTS_CAN_IGNORE;
-			} else if (fileNonExistanceRules >= NOEXISTS_CAN_BLANK) {
-					this.noExistsCanBlank = true;
-					fileNonExistanceRules -= NOEXISTS_CAN_BLANK;
-			} else {
-					throw new IllegalArgumentException ("For path " + path + ", bad rule number for non-existance rules: " + fileNonExistanceRules);
-			}
-		}
-		while (disallowedExceptions > 0) {
-			if (disallowedExceptions >= EXCEPT_NO_LINE_CONT) {
-				this.exceptNoLineCont = true;
-				disallowedExceptions -= EXCEPT_NO_LINE_CONT;
-			} else if (disallowedExceptions >= EXCEPT_NO_COMMENT) {
-				this.exceptNoComment = true;
-				disallowedExceptions -= EXCEPT_NO_COMMENT;
-			} else if (disallowedExceptions >= EXCEPT_NO_BLANK) {
-				this.exceptNoBlank = true;
-				disallowedExceptions -= EXCEPT_NO_BLANK;
-			} else {
-				throw new IllegalArgumentException ("For path " + path + ", bad rule number for disallowed exceptions: " + disallowedExceptions);
-			}
-		}
-		if (lineRules.length > 0) {
-			for (int i = 0; i < lineRules.length; i++) {
-				if (lineRules[i].length < 2) {
-					throw new IllegalArgumentException ("For path " + path + ", line part #" + i + " does not have the proper number of line rules: " + lineRules[i].length);
-				}
-			}
-			this.lineRules = lineRules;
-		} else {
-			throw new IllegalArgumentException ("For path " + path + ", there are no line rules");
-		}
-		while (inheritanceRules > 0) {
-			if (inheritanceRules >= INHERIT_APPEND_SPECIAL_ONLY) {
-				this.inheritsCanAppendSpecialOnly = true;
-				inheritanceRules -= INHERIT_APPEND_SPECIAL_ONLY;
-			} else if (inheritanceRules >= INHERIT_NO_APPEND) {
-				this.inheritsCanAppend = false;
-				inheritanceRules -= INHERIT_NO_APPEND;
-			} else if (inheritanceRules >= INHERIT_PARENT) {
-				this.inherits = true;
-				inheritanceRules -= INHERIT_PARENT;
-			} else if (inheritanceRules >= INHERIT_NONE) {
-				this.inherits = false;
-				inheritanceRules -= INHERIT_NONE;
-			} else {
-				throw new IllegalArgumentException ("For path " + path + ", bad rule number for inheritance: " + inheritanceRules);
-			}
-		}
-		if (deprecation > 0 && deprecation <= MAX_DEPRECATED) {
-			this.deprecation = deprecation;
-		} else {
-			throw new IllegalArgumentException ("For path " + path + ", bad rule number for deprecation: " + deprecation);
-		}
-	}
-	
-	public void mergeToEnvironment (ProfileEnvironment environment) throws FileNotFoundException, IOException {
-		// Discern EAPI
-		Vector<String> eapiData = environment.getVars("eapi", "list");
-		if (eapiData.size() > 0) {
-			try {
-				this.eapi = Integer.valueOf(eapiData.firstElement());
-			} catch (NumberFormatException e) {
-				// ignore, just use default // PMS 5.2.2
-			}
-		}
-		
-		// No inheritance? Then reset it.
-		if (this.inherits == false) {
-			environment.setCategoryKeys(this.fileName, new HashMap<String,Vector<String>>());
-		}
-		
-		// Open file
-		BufferedReader br = null;
-		boolean blankFile = false;
 		try {
-			br = new BufferedReader(new FileReader(path));
-		} catch (FileNotFoundException e) {
-			if (verbose) System.err.println("File " + path + " does not exist.");
-			if (this.noExistsCanBlank) {
-				blankFile = true;
-			} else if (this.noExistsCanIgnore) {
-				return; // we don't exist
-			} else {
-				throw new FileNotFoundException ("Path not found, and does not appear optional: " + this.path);
+			ParsedFileCache parsedFiles = this.createParsedFiles(executor);
+			ResolutionStats stats = parsedFiles.getStats();
+			for (String profilePath: profilePaths) {
+				parsedFiles.prefetch(profilePath);
 			}
-		}
-		int lineNum = 0;
-
-		// These variables sometimes need to exist beyond a line
-		HashMap<String,Vector<String>> fileData = environment.getCategoryKeys(this.fileName);
-		String key = "";
-		Vector<String> keyValues = null;
-		
-		boolean fileHasEnded = false;
-		while (true) {
-			
-			// Read a line
-			String line = "";
-			while (true) { // we allow for line continuations. Loop until full line is gathered
-				if (!blankFile) { // we're dealing with an empty/non-existant file, so skip reading
-					try {
-						String newlyRead = br.readLine();
-						lineNum++;
-						// Handle EOF gracefully
-						if (newlyRead == null) {
-							fileHasEnded = true;
-							newlyRead = "";
-						}
-						line += newlyRead;
-						line.trim();
-					} catch (IOException ioe) {
-						throw ioe;
-					}
-				}
-				
-				// Only continue if we have more data (blank files get to loop once; see end of loop)
-				if (fileHasEnded && line.equals("")) {
-					try {
-						br.close();
-					} catch (Exception e) {
-						// meh, we're done here anyway
-					} finally {
-						return;
+			try {
+				Vector<Vector<String>> chains = new Vector<Vector<String>>();
+				HashMap<String,Integer> chainCounts = new HashMap<String,Integer>(); // canonical path -> how many of the chains it is on
+				for (String profilePath: profilePaths) {
+					Vector<String> chain = (profilePaths.length == 1 || this.action.equals("b")) ? new Vector<String>(Arrays.asList(profilePath)) : this.getFirstParents(profilePath, parsedFiles);
+					for (String path: chain) {
+						String canonicalPath = parsedFiles.getCanonicalPath(path);
+						Integer count = chainCounts.get(canonicalPath);
+						chainCounts.put(canonicalPath, (count == null) ? 1 : count + 1);
 					}
-				} else {
-					fileHasEnded = false; // file has not really ended. Proceed.
+					chains.add(chain);
 				}
-				
-				if (line.indexOf('#') > -1) { // comment cancels even line continuation so it comes first
-					if (this.exceptNoComment) {
-						System.err.println("Notice: file " + path + " line " + lineNum + ": possible comment where comment not allowed. Allowing it to be parsed by profile.");
-					} else {
-						line = line.substring(0, line.indexOf('#')).trim(); // Cut out comment // PMS 5.2.5 // Gentoo bug #326399: we're assuming all files with line continuation use these rules
-						if (line.equals("")) {
-							continue; // allowable comment line with no data but a comment; no need to parse it
+
+				Profile[] profiles = new Profile[profilePaths.length];
+				HashMap<String,Profile> shared = new HashMap<String,Profile>(); // canonical path -> resolved into a fresh environment
+				for (int p = 0; p < profilePaths.length; p++) {
+					Vector<String> chain = chains.get(p);
+					Profile firstParent = null;
+					int top = 0; // the one to merge from the root
+					for (int c = 0; c < chain.size(); c++) {
+						String canonicalPath = parsedFiles.getCanonicalPath(chain.get(c));
+						if (shared.containsKey(canonicalPath)) {
+							firstParent = shared.get(canonicalPath);
+							top = c - 1;
+							break;
+						} else if (chainCounts.get(canonicalPath) > 1) {
+							top = c;
+							break;
 						}
 					}
-				}
-				if (line.endsWith("\\") || (this.type == this.TYPE_KEYVAL_BASH && !line.endsWith("\""))) { // line continuation // PMS 5.2.5 // // Gentoo bug #326399: we're assuming all files with line continuation use these rules
-					if (this.exceptNoLineCont) {
-						System.err.println("Notice: file " + path + " line " + lineNum + ": possible line continuation where line continuation not allowed. Allowing it to be parsed by profile.");
-					} else {
-						if (line.endsWith("\\")) {
-							line = line.substring(0, line.lastIndexOf('\\')).trim();
+					for (int c = top; c >= 0; c--) {
+						ProfileEnvironment environment = new ProfileEnvironment(parsedFiles.getSymbols());
+						if (this.action.equals("b")) {
+							environment.setProvenance(new Provenance());
 						}
-						continue; // we need another line first!
+						firstParent = new Profile(chain.get(c), environment, this.verbose, this.showsMinus(), this.search, parsedFiles, firstParent);
+						shared.put(parsedFiles.getCanonicalPath(chain.get(c)), firstParent);
 					}
+					profiles[p] = firstParent;
 				}
-				
-				if (line.equals("") && !blankFile) { // illegal blank lines caught here
-					if (this.exceptNoBlank) { // blank lines aren't supposed to even exist
-						System.err.println("Warning: file " + path + " line " + lineNum + ": blank line where blank is not allowed.");
-					}
-					continue; // skip the blanks
+				if (stats != null) {
+					stats.print(System.err);
 				}
-				break; // done with line continuations
+				return profiles;
+			} finally {
+				parsedFiles.getDiagnostics().flush(); // whatever was found before anything went wrong, too
 			}
-			
-			if (line.contains(this.search) && !this.search.equals("")) {
-				System.err.println("Notice: search string found in file " + path + " line " + lineNum + ": " + line);
+		} finally {
+			if (executor != null) {
+				executor.shutdownNow(); // anything still queued was never asked for
 			}
-			
-			String[] pieces;
-			if (this.type == TYPE_KEYVAL_BASH) { // strip the bash to a simple 3D format
-				
-				// This entire block uses PMS 5.2.4
-				
-				// If there's no room for a variable name, there is no variable name, and that's bad.
-				int equalsIndex = line.indexOf('=');
-				if (equalsIndex < 1) {
-					System.err.println ("Error: in file " + path + " line " + lineNum + ": equals sign in bad position or non-existant, which means the variable name couldn't be found. SKIPPING this line.");
-					continue;
-				}
-				
-				// Quotes are a big deal. Syntax is a big deal.
-				String value = line.substring(equalsIndex+1, line.length()).trim();
-				if (!value.startsWith("\"") || !value.endsWith("\"")) {
-					System.err.println ("Error: in file " + path + " line " + lineNum + ": variable data should begin and end with double quotes. SKIPPING this line.");
-					continue;
-				}
-				
-				value = value.substring(1, value.length()-1).trim(); // cut out the quotes.
-
-				String variableName = line.substring(0, equalsIndex).trim();
-				// Some key validation
-				if (!variableName.replaceAll("[a-zA-Z0-9_]","").equals("")) { // PMS 5.2.4
-					System.err.println ("Warning: in file " + path + " line " + lineNum + ": variable name " + variableName + " contains invalid characters.");
-				}
-				if (!Pattern.matches("[a-zA-Z]", Character.toString(variableName.charAt(0)))) { // PMS 5.2.4
-					System.err.println ("Warning: in file " + path + " line " + lineNum + ": variable name " + variableName + " begins with an invalid character.");
-				}
-				value = variableName + " " + value; // prepend the key so it becomes part of the pieces variable, just like the regular 3D format
-				
-				pieces = value.split("[ \t]+"); // Gentoo bug #326399: assuming tabs and spaces deliminate values
-			}
-			else { // everyone else is easy to parse
-				pieces = line.split("[ \t]+"); // PMS 5.2.5 // Gentoo bug #326399: we're assuming all files with line continuation use these rules
-			}
-			
-			if (pieces.length < 1) {
-				pieces = new String[]{""}; // there needs to be at least one loop
-			}
-			
-			if (this.type == TYPE_2D) { // TYPE_2D only wants one piece.
-				if (pieces.length > 1) {
-					System.err.println("Notice: file " + path + " line " + lineNum + ": possible syntax issue: there are spaces, indicating 3D data, in a 2D file. Allowing it to be parsed by profile as 2D anyway.");
-				}
-				pieces = new String[]{line};
-			} else if (pieces.length < 2) { // Everyone else wants at least two.
-				if (pieces.length > 0 && this.type == TYPE_KEYVAL_BASH) {
-					// there's a "variable=", but then inside the quotes immediately following there are no spaces. This is fine.
-				} else {
-					System.err.println ("Notice: in file " + path + " line " + lineNum + ": possible syntax issue: there are no spaces, indicating 2D data, in a 3D file. Allowing it to be parsed by profile as 3D anyway.");
-				}
-			}
-			
-			for (int i = 0; i < pieces.length; i++) {
-				String piece = pieces[i];
-				
-				// Key == 0, value == 1
-				int linePiece = 0;
-				if (i > 0) { linePiece = 1; }
-				
-				// OK, time to gather linePiece rules
-				// reasonable defaults
-				boolean prefixCanIgnore = false;
-				boolean prefixSpecialOnly = false;
-				String prefixes = "";
-				int lineType = LINEPIECE_TYPE_STRING;
-				for (int lri = 0; lri < 2; lri++) {
-					int currLineRule = this.lineRules[linePiece][lri];
-					if (lri == 0) { // part one of the rule: what can we strip as a prefix?
-						prefixCanIgnore = false;
-						while (currLineRule > 0) {
-							if (currLineRule >= LINEPIECE_PREFIX_SPECIAL_ONLY) {
-								prefixSpecialOnly = true;
-								currLineRule -= LINEPIECE_PREFIX_SPECIAL_ONLY;
-							} else if (currLineRule >= LINEPIECE_PREFIX_ASTERIK) {
-								prefixes += "*";
-								currLineRule -= LINEPIECE_PREFIX_ASTERIK;
-							} else if (currLineRule >= LINEPIECE_PREFIX_PLUS) {
-								prefixes += "+";
-								currLineRule -= LINEPIECE_PREFIX_PLUS;
-							} else if (currLineRule >= LINEPIECE_PREFIX_MINUS) {
-								prefixes += "-";
-								currLineRule -= LINEPIECE_PREFIX_MINUS;
-							} else if (currLineRule >= LINEPIECE_PREFIX_NONE) {
-								prefixCanIgnore = true;
-								currLineRule -= LINEPIECE_PREFIX_NONE;
-							} else {
-								throw new IllegalArgumentException ("In file " + path + " line " + lineNum + ": bad rule number for allowed prefixes: " + currLineRule);
-							}
-						}
-					} else if (lri == 1) {
-						switch (currLineRule) { // part two: what type is this part stored as?
-							case LINEPIECE_TYPE_NUMBER:
-								if (this.type == TYPE_KEYVAL_BASH && linePiece == 0) {
-									throw new IllegalArgumentException ("In file " + path + " line " + lineNum + ": when using TYPE_KEYVAL_BASH, cannot use LINEPIECE_TYPE_NUMBER for key type");
-								}
-								lineType = LINEPIECE_TYPE_NUMBER;
-								break;
-							case LINEPIECE_TYPE_STRING:
-								lineType = LINEPIECE_TYPE_STRING;
-								break;
-							case LINEPIECE_TYPE_PACKAGE:
-								if (this.type == TYPE_KEYVAL_BASH) {
-									System.err.println ("Warning: in file " + path + " line " + lineNum + ": while this utility can handle package atoms in bash-like files, PMS has neither allowed nor disallowed this.");
-								}
-								lineType = LINEPIECE_TYPE_PACKAGE;
-								break;
-							default:
-								throw new IllegalArgumentException ("In file " + path + " line " + lineNum + ": bad rule number for piece type: " + currLineRule);
-						}
-					}
-				}
-				
-				// We can't have conflicting rules. :)
-				if (prefixCanIgnore == false && prefixes.equals("")) {
-					throw new IllegalArgumentException ("In file " + path + " line " + lineNum + ": we were requested to not ignore prefixes but weren't told what prefixes were acceptable.");
-				}
-				
-				if (prefixSpecialOnly && !this.isSpecialKey(key)) { // If only special variables are allowed to have prefixes, delete the prefixes variable so no prefix is recognized // PMS 5.3.1
-					prefixes = "";
-				}
-				
-				// Strip the prefix, and store it. Also store the line piece without its prefix.
-				String pieceWithoutPrefix = piece;
-				String piecePrefix = "";
-				if (!prefixes.equals("")) {
-					piecePrefix = piece.replaceAll("^(["+prefixes+"]+).*", "$1"); // snag the prefix at the beginning
-					if (Pattern.matches("^["+LINEPIECE_PREFIX_ALL+"]+", piece)) { // if there is a prefix
-						if (prefixes.equals("")) { // should never happen (and we don't really need this warning: CFLAGS for example)
-							System.err.println("Warning: in file " + path + " line " + lineNum + ": we did not desire a prefix, but there appears to be one in this piece: " + piece);
-						} else {
-							if (!Pattern.matches("^["+prefixes+"]+", piecePrefix)) {
-								System.err.println("Warning: in file " + path + " line " + lineNum + ": there is an invalid prefix in this piece (which we will ignore): " + piece);
-							} else {
-								pieceWithoutPrefix = piece.substring(piecePrefix.length(), piece.length());
-								if (Pattern.matches("^["+LINEPIECE_PREFIX_ALL+"]+", Character.toString(pieceWithoutPrefix.charAt(0)))) { // still!?
-									System.err.println("Warning: in file " + path + " line " + lineNum + ": we desired a prefix, and found one, but now there appears to be yet another prefix (which will not be processed) in this piece: " + piece);
-								}
-							}
-						}
-					} else if (!prefixes.equals("") && !prefixCanIgnore) { // if there is no prefix but we want one
-						System.err.println("Warning: in file " + path + " line " + lineNum + ": it seems we desired a prefix, but there is none in this piece: " + piece);
-					}
-				}
-				
-				// Some special handling of number formats.
-				if (lineType == LINEPIECE_TYPE_NUMBER) {
-					if (this.exceptNoBlank && pieceWithoutPrefix.equals("")) { // Special scenario: allow number zero where blank is not allowed in a numeric field
-						pieceWithoutPrefix = "0";
-						piece += "0";
-					} else {
-						try {
-							Double.valueOf(pieceWithoutPrefix);
-						} catch (NumberFormatException e) {
-							System.err.println ("Warning: in file " + path + " line " + lineNum + ": this piece is supposed to be numeric, but it has failed checks: " + piece);
-						}
-					}
-				}
-				
-				// TODO: Some special handling of package formats
-				
-				if (linePiece == 0 && this.type != TYPE_2D) { // first piece, the key. We reset values for each line, but only in a 3D array.
-					// This means a change in key, so...
-					// Save data using current key before we update key to new one and reset data
-					if (keyValues != null) {
-						// Append previously collected data (if any exists and we're allowed)
-						if (this.inheritsCanAppend && (!this.inheritsCanAppendSpecialOnly || this.isSpecialKey(key))) {
-							Vector<String> existingValues = new Vector<String>();
-							if (fileData.containsKey(key)) {
-								existingValues = fileData.get(key);
-							} // otherwise we'll start a new one
-							keyValues = this.mergeValues(existingValues, keyValues, prefixes);
-						}
-					
-						fileData.put(key, keyValues);
-					}
-					keyValues = new Vector<String>(); // reset our data
-
-					// We located our key! Save it for later!
-					key = pieceWithoutPrefix;
-					
-					if (!piecePrefix.equals("")) {
-						System.err.println ("Warning: in file " + path + " line " + lineNum + ": this piece has a prefix, but it is a key. Behavior for keys with prefixes is undefined in PMS, so we will ignore: " + piece);
-					}
-				} else {
-					// First run for TYPE_2D.
-					// This type is always on linePiece 1, functionally, so values needs only to be set once for the duration of the file
-					if (keyValues == null) {
-						keyValues = new Vector<String>();
-						key = "list"; // Key is always the same for 2D formats, making it store 2D in a 3D array.
-					}
-					
-					// Find values that need to append to our growing list
-					Vector<String> appendToKeyValues = new Vector<String>();
-					
-					if (pieceWithoutPrefix.startsWith("$") && this.type == TYPE_KEYVAL_BASH) {  // it's actually a variable, so expand it. // PMS 5.2.4
-						String variableName = pieceWithoutPrefix.substring(1, pieceWithoutPrefix.length()).replace("{","").replace("}",""); // cut off the $, and remove any curly brackets, since it means the same thing with or without
+		}
+	}
 
-						// Expand variable to that variable's value(s)
-						Vector<String> existingValues = new Vector<String>();
-						if (fileData.containsKey(variableName)) {
-							existingValues = fileData.get(variableName);
-						}
-						appendToKeyValues.addAll(existingValues);
-					} else {
-						// Someone trying to be fancy?
-						if (pieceWithoutPrefix.startsWith("$")) {
-							System.err.println ("Warning: in file " + path + " line " + lineNum + ": this piece looks like a variable, but this file does not allow variables: " + piece);
-						}
-						appendToKeyValues.add(piece);
-					}
-					keyValues = this.mergeValues(keyValues, appendToKeyValues, ""); // just use for dup-checking. Prefixes will be applied later. (Doing prefixes twice means the prefixes are ineffective.)
-					
-					// Append if we're allowed to, otherwise replace.
-					Vector<String> values;
-					if (this.inheritsCanAppend && (!this.inheritsCanAppendSpecialOnly || this.isSpecialKey(key))) {
-						// Get the existing values that we'll append to
-						Vector<String> existingValues = new Vector<String>();
-						if (fileData.containsKey(key)) {
-							existingValues = fileData.get(key);
-						} // otherwise we'll start a new one
-						values = this.mergeValues(existingValues, keyValues, prefixes);
-					} else {
-						values = keyValues;
-					}
-					fileData.put(key, values);
-				}
+	/**
+	 * profilePath, then its first parent, then the first parent of that and so
+	 * on, as far as they go. A profile that inherits from a cycle this way is
+	 * left on its own, so resolving it reports the cycle as usual.
+	 */
+	private Vector<String> getFirstParents (String profilePath, ParsedFileCache parsedFiles) throws IOException {
+		Vector<String> chain = new Vector<String>();
+		HashSet<String> chainPaths = new HashSet<String>(); // canonical
+		String path = profilePath;
+		while (true) {
+			if (!chainPaths.add(parsedFiles.getCanonicalPath(path))) {
+				return new Vector<String>(Arrays.asList(profilePath));
 			}
-			
-			environment.setCategoryKeys(this.fileName, fileData);
-			
-			if (br == null && line.equals("")) {
-				// single loop execution is done
-				return;
+			chain.add(path);
+			ParsedProfileFile parents = parsedFiles.get(Profile.createFiles(path, this.verbose, this.showsMinus(), this.search)[0][0]);
+			if (parents.getStatus() != ParsedProfileFile.STATUS_FOUND || parents.getLineCount() == 0) {
+				return chain;
 			}
+			path = path + "/" + parsedFiles.getSymbols().get(parents.getPieces(0)[0]);
 		}
 	}
-	
-	private Vector<String> mergeValues (Vector<String> existingValues, Vector<String> keyValues, String prefixesToIgnore) {
-		// Locate duplicates and remove them before merging.
-		String[] wasKeyValues = new String[0];
-		wasKeyValues = keyValues.toArray(wasKeyValues); // make a light-weight copy of old values so we can modify existingValues
-		for (String newValue: wasKeyValues) {
-			String newValueWithoutPrefix = newValue;
-			if (!prefixesToIgnore.equals("")) {
-				newValueWithoutPrefix = newValue.replaceAll("^["+prefixesToIgnore+"]+", "");
-			}
 
-			if (!this.showMinus) {
-				int minusPrefixPos = newValue.indexOf('-');
-				if (prefixesToIgnore.indexOf('-') > -1 && minusPrefixPos > -1 && minusPrefixPos < newValue.length() - newValueWithoutPrefix.length()) {
-					// This has a - prefix, so it negates but does not appear in the list
-					keyValues.remove(newValue);
-				}
-			}
-			
-			String[] wasExistingValues = new String[0];
-			wasExistingValues = existingValues.toArray(wasExistingValues); // make a light-weight copy of old values so we can modify existingValues
+	/**
+	 * Resolves every profile under root at once, and prints the ones no other
+	 * profile there inherits from (see ProfileTree).
+	 */
+	public void resolveTree (String root) throws IOException {
+		ParsedFileCache parsedFiles = this.createParsedFiles(null);
+		ProfileTree tree = new ProfileTree(parsedFiles, this.verbose, this.showsMinus(), this.search);
+		ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		try {
+			tree.build(new File(root));
+			tree.resolve(pool);
+		} finally {
+			pool.shutdownNow();
+			parsedFiles.getDiagnostics().flush();
+		}
+		if (parsedFiles.getStats() != null) {
+			parsedFiles.getStats().print(System.err);
+		}
 
-			for (String existingValue: wasExistingValues) {
-				String existingValueWithoutPrefix = existingValue;
-				if (!prefixesToIgnore.equals("")) {
-					existingValueWithoutPrefix = existingValue.replaceAll("^["+prefixesToIgnore+"]+", "");
-				}
-				if (newValueWithoutPrefix.equals(existingValueWithoutPrefix)) { // existingValue is overridden.
-					existingValues.remove(existingValue);
-				}
+		PrintWriter out = ProfileInspector.openStandardOutput();
+		for (String leaf: tree.getLeaves()) {
+			Profile profile = tree.getProfile(leaf);
+			if (profile == null) {
+				out.flush();
+				System.err.println("Error resolving " + leaf + ": " + tree.getFailure(leaf));
+			} else if (this.format.equals("json")) {
+				new ProfileJsonWriter(out, leaf).write(profile);
+			} else {
+				out.println("====== " + leaf);
+				profile.writeHumanOutput(out);
+				out.println();
 			}
-
 		}
-		
-		Vector<String> values = new Vector<String>();
-		values.addAll(existingValues);
-		values.addAll(keyValues);
-		return values;
+		out.flush();
+		if (this.verbose) System.err.println("Resolved " + tree.getNodeCount() + " profiles, " + tree.getLeaves().size() + " of them leaves, under " + root);
 	}
-	
-	private boolean isSpecialKey (String key) {
-		// This entire block is PMS 5.3.1
-		if (
-			key.equals("USE")
-			|| key.equals("USE_EXPAND")
-			|| key.equals("USE_EXPAND_HIDDEN")
-			|| key.equals("CONFIG_PROTECT")
-			|| key.equals("CONFIG_PROTECT_MASK")
-			) {
-			return true;
-		} else if (eapi == 4 && (
-			key.equals("IUSE_IMPLICIT")
-			|| key.equals("USE_EXPAND_IMPLICIT")
-			|| key.equals("USE_EXPAND_UNPREFIXED")
-			) ) {
-			return true;
-		} else {
-			return false;
+
+	/**
+	 * Where verbose progress is printed: with the report, unless the report is
+	 * meant for a program (-o json or binary), which it would corrupt.
+	 */
+	private PrintStream getProgress () {
+		if (this.format.equals("json") || this.format.equals("binary")) {
+			return System.err;
 		}
+		return System.out;
 	}
-	
-	public String getPath () {
-		return this.path;
-	}
-	public int getEAPI () {
-		return this.eapi;
-	}
-	public String getFileName () {
-		return this.fileName;
-	}
-	public int getType () {
-		return this.type;
-	}
-	
-}
-
-class Profile {
 
-	private static HashMap<String, Vector<String>> allRelations = new HashMap<String, Vector<String>>(); // parent -> child
-
-	private String path = "";
-	private ProfileEnvironment environment = null;
-	private ProfileFile files[][];
-
-	private boolean verbose = false;
-	private boolean showMinus = false;
-	private String search = "";
-	private Vector<Profile> parents = new Vector<Profile>();
+	/**
+	 * Whether merging keeps values with a - prefix. Action u stacks the
+	 * package.use* entries of a package onto the profile-wide flags, so their
+	 * -flags have to be kept to turn those off, with or without -m.
+	 */
+	private boolean showsMinus () {
+		return this.minus || this.action.equals("u");
+	}
 
-	public Profile (String path, ProfileEnvironment environment, boolean verbose, boolean showMinus, String search) throws IOException, IllegalArgumentException {
-		this.path = path;
-		this.environment = environment;
-		this.verbose = verbose;
-		this.showMinus = showMinus;
-		this.search = search;
-		
-		File pathFile = new File(this.path);
-		String absolutePath = pathFile.getCanonicalPath(); // resolve symlinks, get absolute path. Used for cycle checking.
-		
-		if (!pathFile.exists()) {
-			System.err.println("Warning: profile at " + this.path + " doesn't exist!");
+	private ParsedFileCache createParsedFiles (ExecutorService executor) throws IOException {
+		ParsedFileCache parsedFiles = new ParsedFileCache(executor, this.verbose, this.showsMinus(), this.search);
+		parsedFiles.setProgress(this.getProgress());
+		if (!this.cache.equals("")) {
+			parsedFiles.setStore(new ParsedFileStore(new File(this.cache)));
 		}
-		
-		this.files = new ProfileFile[][]{ // files are listed in rounds: the ones that need to load before one are listed in a round before that one
-			{ // round one: it is special in that it gets processed before we announce we are processing this profile
-				new ProfileFile( // PMS 5.2.1
-								this.path+"/parent",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_BLANK
-								+ ProfileFile.EXCEPT_NO_COMMENT
-								+ ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_NONE,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.2
-								this.path+"/eapi",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_BLANK,
-								ProfileFile.EXCEPT_NO_BLANK
-								+ ProfileFile.EXCEPT_NO_COMMENT
-								+ ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_NUMBER
-									}
-								},
-								ProfileFile.INHERIT_NONE,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-			},
-			{ // round two
-				new ProfileFile( // PMS 5.2.3
-								this.path+"/deprecated",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_BLANK
-								+ ProfileFile.EXCEPT_NO_COMMENT
-								+ ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_NONE,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.4
-								this.path+"/make.defaults",
-								ProfileFile.TYPE_KEYVAL_BASH,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								0,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_STRING
-									},
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_SPECIAL_ONLY+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_PARENT+ProfileFile.INHERIT_APPEND_SPECIAL_ONLY,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.5
-								this.path+"/virtuals",
-								ProfileFile.TYPE_3D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									},
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									}
-								},
-								ProfileFile.INHERIT_PARENT+ProfileFile.INHERIT_NO_APPEND,
-								ProfileFile.DEPRECATED_YES,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.7
-								this.path+"/packages",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS+ProfileFile.LINEPIECE_PREFIX_ASTERIK, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.9
-								this.path+"/package.mask",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.10
-								this.path+"/package.provided",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.11
-								this.path+"/package.use",
-								ProfileFile.TYPE_3D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									},
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.12
-								this.path+"/package.use.force",
-								ProfileFile.TYPE_3D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									},
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									},
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.12
-								this.path+"/package.use.mask",
-								ProfileFile.TYPE_3D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE, ProfileFile.LINEPIECE_TYPE_PACKAGE
-									},
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									},
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.12
-								this.path+"/use.force",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				),
-				new ProfileFile( // PMS 5.2.12
-								this.path+"/use.mask",
-								ProfileFile.TYPE_2D,
-								ProfileFile.NOEXISTS_CAN_IGNORE,
-								ProfileFile.EXCEPT_NO_LINE_CONT,
-								new int[][] {
-									{
-										ProfileFile.LINEPIECE_PREFIX_NONE+ProfileFile.LINEPIECE_PREFIX_MINUS, ProfileFile.LINEPIECE_TYPE_STRING
-									}
-								},
-								ProfileFile.INHERIT_PARENT,
-								ProfileFile.DEPRECATED_NO,
-								this.verbose, this.showMinus, this.search
-				)
-			},
-		};
-
-		this.mergeFilesToEnvironment(this.files[0], this.environment);
-		
-		Vector<String> existingParents = new Vector<String>(); // by default blank, unless the key exists
-		if (this.allRelations.containsKey(absolutePath)) {
-			existingParents = this.allRelations.get(absolutePath);
+		if (this.stats) {
+			parsedFiles.setStats(new ResolutionStats());
 		}
-		Vector<String> parents = this.environment.getVars("parent", "list");
-		for (String parent: parents) {
-			String absoluteParent = new File(this.path+"/"+parent).getCanonicalPath();
-			if (existingParents.contains(absoluteParent)) { // PMS 5.2.1
-				throw new IllegalArgumentException("Found a cycle, which results in a broken profile: child path " + this.path + " is trying to include parent path " + parent + " more than once.");
-			}
-			
-			existingParents.add(absoluteParent);
-			this.parents.add(new Profile(this.path+"/"+parent, this.environment, this.verbose, this.showMinus, this.search));
-		}
-		this.allRelations.put(absolutePath, existingParents);
-
-		if (verbose) System.out.println("Investigating profile at " + path); // we do this after because parents do investigation first // PMS 5.2.1
-		this.mergeFilesToEnvironment(this.files[1], this.environment);
+		this.applyLevel(parsedFiles.getDiagnostics());
+		return parsedFiles;
 	}
-	
-	public void mergeFilesToEnvironment(ProfileFile[] files, ProfileEnvironment environment) throws FileNotFoundException, IOException {
-		for (ProfileFile currFile: files) {
-			currFile.mergeToEnvironment(environment);
+
+	private Diagnostics applyLevel (Diagnostics diagnostics) {
+		if (!this.level.equals("")) {
+			diagnostics.setThreshold(Diagnostics.parseSeverity(this.level));
 		}
+		return diagnostics;
 	}
-	
-	public String getHumanOutput () {
-		String results = "";
-		Set<String> leftOverCategoryNames = this.environment.getCategories().keySet();
-		
-		for (ProfileFile[] round: this.files) {
-			for (ProfileFile file: round) {
-				String fileName = file.getFileName();
-				results += "###### " + fileName + "\n";
-				if (file.getType() == ProfileFile.TYPE_2D) {
-					Vector<String> values = this.environment.getVars(fileName, "list");
-					results += Profile.array2DToString(values, "", "\n", "\n") + "\n";
-					leftOverCategoryNames.remove(fileName);
-				} else if (file.getType() == ProfileFile.TYPE_3D) {
-					HashMap<String,Vector<String>> category = this.environment.getCategoryKeys(fileName);
-					results += Profile.array3DToString(category, " ", " ", "") + "\n";
-					leftOverCategoryNames.remove(fileName);
-				} else if (file.getType() == ProfileFile.TYPE_KEYVAL_BASH) {
-					HashMap<String,Vector<String>> category = this.environment.getCategoryKeys(fileName);
-					results += Profile.array3DToString(category, "=\"", " ", "\"") + "\n";
-					leftOverCategoryNames.remove(fileName);
-				}
-			}
-		}
-		
-		if (verbose) {
-			// Warn about unhandled data
-			for (String categoryName: leftOverCategoryNames) {
-				HashMap<String,Vector<String>> keys = this.environment.getCategoryKeys(categoryName);
-				Set<String> keyNames = keys.keySet();
-				for (String keyName: keyNames) {
-					System.err.println("Warning: unhandled data: " + keyName);
+
+	static final ParameterDef[] ARG_DEFS = {
+		new StringDef('a', "action", "the action to take with a/the profile"),
+		new StringDef('p', "profile", "the path to the profile to investigate"),
+		new StringDef('b', "base", "the path to the profile to compare against"),
+		new StringDef('s', "search", "search for a string in the profile"),
+		new BoolDef('v', "verbose", "Supress extra information normally printed prior to results"),
+		new BoolDef('m', "minus", "Do not let the minus prefix vanish"),
+		new BoolDef('j', "parallel", "Parse the files of all inherited profiles in parallel before merging them"),
+		new BoolDef('t', "stats", "print what each file cost to stderr"),
+		new StringDef('e', "level", "the least severe diagnostics to print: notice, warning or error"),
+		new StringDef('c', "cache", "keep parsed profile files in this directory between runs"),
+		new StringDef('l', "listen", "the socket path or local port to serve profiles on"),
+		new StringDef('q', "packages", "the packages to give the USE flags of, or the value to explain"),
+		new StringDef('f', "listFile", "a file listing the packages to give the USE flags of, the patterns to search for or the values to explain"),
+		new StringDef('o', "format", "how action i prints the profile: human, json or binary")
+	};
+
+	public static void main (String args[]) {
+		ProfileInspector profileInspector = new ProfileInspector();
+		Profile resultingProfile = null;
+
+		if (args.length < 1 || args[0].indexOf("help") >= 0) {
+			usage();
+			System.exit(0);
+		} else {
+			try {
+				ArgumentProcessor.processArgs(args, ARG_DEFS, profileInspector);
+				resultingProfile = profileInspector.processProfile();
+				if (resultingProfile != null) {
+					profileInspector.printProfile(resultingProfile);
 				}
+			} catch (ArgumentErrorException e) {
+				System.err.println("Error processing command-line arguments: " + e.getMessage());
+				usage();
+				System.exit(255);
+			} catch (Exception e) {
+				System.err.println("Error proccessing:");
+				e.printStackTrace();
+				System.exit(1);
 			}
 		}
-		return results;
 	}
-	
-	public static String array2DToString (Vector<String> array, String begin, String valueSeperator, String end) {
-		String results = "";
-		results += begin;
-		for (int v = 0; v < array.size(); v++) {
-			results += array.get(v);
-			if (v+1 < array.size()) { results += valueSeperator; }
-		}
-		results += end;
-		return results;
+
+	// Reports can be large: write them through one big buffer instead of System.out's line flushing
+	public static PrintWriter openStandardOutput () {
+		return new PrintWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out)), 64 * 1024), false);
 	}
-	
-	public static String array3DToString (HashMap<String,Vector<String>> array, String beginSeperator, String valueSeperator, String endSeperator) {
-		String results = "";
-		Iterator arrays = array.keySet().iterator();
-		while (arrays.hasNext()) {
-			String arrayName = (String)arrays.next();
-			Vector<String> currAarrray = array.get(arrayName);
-			if (currAarrray.size() > 0) {
-				results += array2DToString(array.get(arrayName), arrayName+beginSeperator, valueSeperator, endSeperator+"\n");
-			}
-		}
-		return results;
+
+	public static void usage () {
+		System.out.println("Usage: java ProfileInspector [-a <action>] [options]");
+		System.out.println("");
+		System.out.println("Actions:");
+		System.out.println("    i           Default. Investigate the profile, and print out\n" +
+		                   "                accumulated profile information (requires -p)");
+		System.out.println("    d           Keep running, and answer queries about profiles\n" +
+		                   "                on a socket (requires -l)");
+		System.out.println("    w           Investigate the profile, then watch every profile it\n" +
+		                   "                inherits from and print each category again when\n" +
+		                   "                one of its files changes (requires -p)");
+		System.out.println("    u           Investigate the profile, then print the USE flags\n" +
+		                   "                it enables for each package given with -q, -f or\n" +
+		                   "                on standard input (requires -p)");
+		System.out.println("    b           Investigate the profile, keeping track of which file\n" +
+		                   "                and line set, negated or dropped each value, then\n" +
+		                   "                explain each value given with -q, -f or on standard\n" +
+		                   "                input as \"category [key] value\" (requires -p)");
+		System.out.println("    r           Investigate every profile under a directory at once,\n" +
+		                   "                each shared parent only once, and print the ones\n" +
+		                   "                no other profile there inherits from (requires -p)");
+		System.out.println("    c           Investigate the profile and the one given with -b,\n" +
+		                   "                then print every value that was added, removed or\n" +
+		                   "                moved going from -b to -p (requires -p and -b)");
+		System.out.println("    g           Search every profile file under a directory for\n" +
+		                   "                the pattern given with -s, or the patterns in -f or\n" +
+		                   "                on standard input, all at once and in parallel,\n" +
+		                   "                printing path:line:column: pattern for each hit\n" +
+		                   "                (requires -p)");
+		System.out.println("");
+		System.out.println("Options:");
+		System.out.println("    -p <path>   The path to the profile to investigate");
+		System.out.println("");
+		System.out.println("    -b <path>   For action c: the profile to compare against. Files\n" +
+		                   "                of ancestors both profiles share are parsed once,\n" +
+		                   "                and the ones both reach through first parents\n" +
+		                   "                are merged once.");
+		System.out.println("");
+		System.out.println("    -s <string> Search for any mention of string and report to\n" +
+		                   "                stderr. For action g, the pattern to search for.");
+		System.out.println("");
+		System.out.println("    -j          Parse the files of every inherited profile in\n" +
+		                   "                parallel first, then merge them in order.");
+		System.out.println("");
+		System.out.println("    -e <level>  Only print diagnostics at least this severe: notice\n" +
+		                   "                (the default), warning or error. The same diagnostic\n" +
+		                   "                in the same file is printed once, with a count.");
+		System.out.println("");
+		System.out.println("    -t          Print, to stderr, the time each file took to parse and\n" +
+		                   "                merge, and how big it was, the most expensive first.\n" +
+		                   "                Flight Recorder events for each profile and file are\n" +
+		                   "                recorded whenever JFR is on, with or without -t.");
+		System.out.println("");
+		System.out.println("    -c <dir>    Keep parsed profile files in dir, and reuse them\n" +
+		                   "                while the files' size and mtime are unchanged.");
+		System.out.println("");
+		System.out.println("    -o <format> For action i: human (the default), json for one JSON\n" +
+		                   "                object per category and key, or binary (see\n" +
+		                   "                ProfileBinaryWriter). For actions r, c and g: human\n" +
+		                   "                or json, one object per record, change or hit.");
+		System.out.println("");
+		System.out.println("    -q <list>   For action u: packages, separated by spaces or\n" +
+		                   "                commas. Each is category/name, optionally with\n" +
+		                   "                -version and :slot. For action b: one value to\n" +
+		                   "                explain, as \"category [key] value\".");
+		System.out.println("");
+		System.out.println("    -f <file>   For action u: a file with one package per line.\n" +
+		                   "                Without -q or -f, they are read from standard input.\n" +
+		                   "                For action g: a file with one pattern per line, a\n" +
+		                   "                literal, or a regular expression written as /regex/.\n" +
+		                   "                For action b: a file with one value per line.");
+		System.out.println("");
+		System.out.println("    -l <where>  For action d: a local port number, or the path of\n" +
+		                   "                a Unix domain socket to create. One request per\n" +
+		                   "                line:\n" +
+		                   "                  resolve <profile>\n" +
+		                   "                  category <profile> <category>\n" +
+		                   "                  key <profile> <category> <key>\n" +
+		                   "                  package <profile> <category/name>\n" +
+		                   "                  reload [<profile>]\n" +
+		                   "                Answers are \"OK <n>\" followed by n lines, or\n" +
+		                   "                \"ERROR <message>\".");
 	}
+
 }
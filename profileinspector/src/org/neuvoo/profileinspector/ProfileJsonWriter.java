@@ -0,0 +1,108 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.PrintWriter;
+
+/**
+ * Writes a resolved profile as JSON Lines, one object per category and key:
+ *
+ *   {"category":"use.mask","key":"list","values":["flag","-other"]}
+ *
+ * When writing many profiles, each record starts with the profile's path too.
+ *
+ * Everything outside printable ASCII is escaped, so the output does not depend
+ * on the platform's default charset.
+ */
+class ProfileJsonWriter extends ProfileRecordWriter {
+
+	private final PrintWriter out;
+	private final String profilePath; // written into every record when not null
+
+	public ProfileJsonWriter (PrintWriter out) {
+		this(out, null);
+	}
+
+	public ProfileJsonWriter (PrintWriter out, String profilePath) {
+		this.out = out;
+		this.profilePath = profilePath;
+	}
+
+	protected void writeRecord (String category, int key, int[] values) {
+		this.out.write('{');
+		if (this.profilePath != null) {
+			this.out.write("\"profile\":");
+			ProfileJsonWriter.writeString(this.out, this.profilePath);
+			this.out.write(',');
+		}
+		this.out.write("\"category\":");
+		ProfileJsonWriter.writeString(this.out, category);
+		this.out.write(",\"key\":");
+		ProfileJsonWriter.writeString(this.out, this.symbols.get(key));
+		this.out.write(",\"values\":[");
+		for (int v = 0; v < values.length; v++) {
+			if (v > 0) { this.out.write(','); }
+			ProfileJsonWriter.writeString(this.out, this.symbols.get(values[v]));
+		}
+		this.out.write("]}\n");
+	}
+
+	protected void finish () {
+		this.out.flush();
+	}
+
+	static void writeString (PrintWriter out, String string) {
+		out.write('"');
+		int written = 0; // runs of characters that need no escaping are written in one go
+		for (int c = 0; c < string.length(); c++) {
+			char character = string.charAt(c);
+			if (character >= 0x20 && character < 0x7f && character != '"' && character != '\\') {
+				continue;
+			}
+			out.write(string, written, c - written);
+			written = c + 1;
+			if (character == '"' || character == '\\') {
+				out.write('\\');
+				out.write(character);
+			} else if (character == '\n') {
+				out.write("\\n");
+			} else if (character == '\t') {
+				out.write("\\t");
+			} else {
+				out.write(String.format("\\u%04x", (int)character));
+			}
+		}
+		out.write(string, written, string.length() - written);
+		out.write('"');
+	}
+
+}
@@ -0,0 +1,68 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Writes a resolved profile as records of one category, one key and that key's
+ * values, in the order action i prints them: category by category as they are
+ * merged, keys in the order they were first set. Each record is written as soon
+ * as it is visited, so nothing but the environment itself is kept in memory.
+ */
+abstract class ProfileRecordWriter {
+
+	protected SymbolTable symbols = null; // of the profile being written
+
+	public void write (Profile profile) throws IOException {
+		ProfileEnvironment environment = profile.getEnvironment();
+		this.symbols = environment.getSymbols();
+		for (ProfileFile[] round: profile.getFiles()) {
+			for (ProfileFile file: round) {
+				if (file.getType() == ProfileFile.TYPE_IGNORE) {
+					continue;
+				}
+				for (Map.Entry<Integer,int[]> key: environment.getCategoryIds(file.getFileName()).entrySet()) {
+					this.writeRecord(file.getFileName(), key.getKey(), key.getValue());
+				}
+			}
+		}
+		this.finish();
+	}
+
+	// key and values are SymbolTable ids
+	protected abstract void writeRecord (String category, int key, int[] values) throws IOException;
+
+	protected abstract void finish () throws IOException;
+
+}
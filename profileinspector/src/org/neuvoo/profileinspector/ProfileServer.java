@@ -0,0 +1,214 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Action d: keeps resolved profiles in memory and answers queries about them
+ * over a Unix domain socket or a local TCP port, so build scripts don't pay
+ * for a JVM start and a full resolution on every question.
+ *
+ * Every connection gets its own thread and may send any number of requests,
+ * one per line. Resolved profiles are kept as ProfileSnapshots, which are
+ * replaced (never modified) on reload, so queries never wait for a reload.
+ * Only the MAX_SNAPSHOTS profiles queried last are kept; one dropped is
+ * resolved again the next time it is asked about.
+ */
+class ProfileServer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	public static final int MAX_SNAPSHOTS = 64;
+
+	private ProfileInspector inspector = null;
+	private Map<String,ProfileSnapshot> snapshots = Collections.synchronizedMap(new LinkedHashMap<String,ProfileSnapshot>(16, 0.75f, true) { // canonical path -> latest snapshot, least recently queried first
+		private static final long serialVersionUID = 1L;
+		protected boolean removeEldestEntry (Map.Entry<String,ProfileSnapshot> eldest) {
+			return this.size() > MAX_SNAPSHOTS;
+		}
+	});
+	private ConcurrentHashMap<String,Object> resolveLocks = new ConcurrentHashMap<String,Object>(); // canonical path -> lock, while it resolves, so different profiles resolve at once
+
+	public ProfileServer (ProfileInspector inspector) {
+		this.inspector = inspector;
+	}
+
+	public void serve (String address) throws IOException {
+		ServerSocketChannel server;
+		if (address.matches("[0-9]+")) {
+			server = ServerSocketChannel.open();
+			server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address)));
+		} else {
+			Path socket = Paths.get(address);
+			if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) {
+				if (!Files.readAttributes(socket, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS).isOther()) {
+					throw new IOException("Refusing to replace " + address + ", which is not a socket");
+				}
+				Files.delete(socket); // left over from an earlier run
+			}
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+			server.bind(UnixDomainSocketAddress.of(socket));
+		}
+
+		while (true) {
+			final SocketChannel client = server.accept();
+			Thread handler = new Thread(new Runnable() {
+				public void run () {
+					handle(client);
+				}
+			}, "profileinspector client");
+			handler.setDaemon(true);
+			handler.start();
+		}
+	}
+
+	private void handle (SocketChannel client) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(Channels.newInputStream(client), UTF8));
+			PrintWriter out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(client), UTF8)));
+			String request;
+			while ((request = in.readLine()) != null) {
+				String[] words = request.trim().split("[ \t]+");
+				if (words[0].equals("quit")) {
+					break;
+				}
+				Vector<String> answer = new Vector<String>();
+				try {
+					this.answer(words, answer);
+					out.print("OK " + answer.size() + "\n");
+					for (String line: answer) {
+						out.print(line + "\n");
+					}
+				} catch (IllegalArgumentException e) {
+					out.print("ERROR " + e.getMessage() + "\n");
+				} catch (IOException e) {
+					out.print("ERROR " + e.getMessage() + "\n");
+				}
+				out.flush();
+			}
+		} catch (IOException e) {
+			// client went away
+		} finally {
+			try { client.close(); } catch (IOException e) { }
+		}
+	}
+
+	private void answer (String[] words, Vector<String> answer) throws IOException {
+		String command = words[0];
+		if (command.equals("resolve") && words.length == 2) {
+			for (String line: this.getSnapshot(words[1]).getHumanOutput()) {
+				answer.add(line);
+			}
+		} else if (command.equals("category") && words.length == 3) {
+			for (Map.Entry<String,List<String>> key: this.getSnapshot(words[1]).getCategoryKeys(words[2]).entrySet()) {
+				StringBuilder line = new StringBuilder(key.getKey());
+				for (String value: key.getValue()) {
+					line.append(' ').append(value);
+				}
+				answer.add(line.toString());
+			}
+		} else if (command.equals("key") && words.length == 4) {
+			answer.addAll(this.getSnapshot(words[1]).getVars(words[2], words[3]));
+		} else if (command.equals("package") && words.length == 3) {
+			ProfileSnapshot snapshot = this.getSnapshot(words[1]);
+			for (PackageEntry entry: snapshot.getPackageIndex().getEntries(words[2])) {
+				answer.add(entry.toLine(snapshot.getSymbols()));
+			}
+		} else if (command.equals("reload") && words.length <= 2) {
+			if (words.length == 2) {
+				answer.add(this.reload(words[1]).getPath());
+			} else {
+				Vector<ProfileSnapshot> snapshots;
+				synchronized (this.snapshots) {
+					snapshots = new Vector<ProfileSnapshot>(this.snapshots.values());
+				}
+				for (ProfileSnapshot snapshot: snapshots) {
+					answer.add(this.reload(snapshot.getPath()).getPath());
+				}
+			}
+		} else {
+			throw new IllegalArgumentException("unknown request: " + words[0]);
+		}
+	}
+
+	private ProfileSnapshot getSnapshot (String path) throws IOException {
+		ProfileSnapshot snapshot = this.snapshots.get(new File(path).getCanonicalPath());
+		if (snapshot == null) {
+			snapshot = this.reload(path);
+		}
+		return snapshot;
+	}
+
+	private ProfileSnapshot reload (String path) throws IOException {
+		String canonicalPath = new File(path).getCanonicalPath();
+		while (true) {
+			Object resolveLock = this.resolveLocks.computeIfAbsent(canonicalPath, new Function<String,Object>() {
+				public Object apply (String key) {
+					return new Object();
+				}
+			});
+			synchronized (resolveLock) { // two reloads of one profile must not finish out of order
+				if (this.resolveLocks.get(canonicalPath) != resolveLock) {
+					continue; // dropped by the reload we waited for; whoever came since has a new one
+				}
+				try {
+					ProfileSnapshot snapshot = new ProfileSnapshot(canonicalPath, this.inspector.resolve(canonicalPath));
+					this.snapshots.put(canonicalPath, snapshot); // readers see either the old or the new one, never half of either
+					return snapshot;
+				} finally {
+					this.resolveLocks.remove(canonicalPath, resolveLock); // only kept while something resolves
+				}
+			}
+		}
+	}
+
+}
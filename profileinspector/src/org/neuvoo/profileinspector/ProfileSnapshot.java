@@ -0,0 +1,92 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Vector;
+
+/**
+ * An immutable copy of a resolved profile. Once built it is never changed, so
+ * any number of threads can read it while a newer one is being resolved. The
+ * values are kept as a ProfileEnvironment snapshot, which costs nothing to
+ * take; they are only turned into Strings when asked for.
+ */
+class ProfileSnapshot {
+
+	private final String path;
+	private final long resolvedAt;
+	private final String[] humanOutput;
+	private final ProfileEnvironment environment; // a snapshot, which nothing merges into
+	private final PackageIndex packageIndex;
+
+	public ProfileSnapshot (String path, Profile profile) {
+		this.path = path;
+		this.resolvedAt = System.currentTimeMillis();
+		this.humanOutput = profile.getHumanOutput().split("\n", -1); // what action i prints, line by line
+		this.environment = profile.getEnvironment().snapshot();
+		this.packageIndex = new PackageIndex(profile.getFiles(), profile.getEnvironment());
+	}
+
+	public String getPath () {
+		return this.path;
+	}
+	public long getResolvedAt () {
+		return this.resolvedAt;
+	}
+	public String[] getHumanOutput () {
+		return this.humanOutput.clone();
+	}
+
+	public SymbolTable getSymbols () {
+		return this.environment.getSymbols();
+	}
+
+	public PackageIndex getPackageIndex () {
+		return this.packageIndex;
+	}
+
+	public Map<String,List<String>> getCategoryKeys (String category) {
+		HashMap<String,List<String>> keys = new HashMap<String,List<String>>();
+		for (Map.Entry<String,Vector<String>> key: this.environment.getCategoryKeys(category).entrySet()) {
+			keys.put(key.getKey(), Collections.unmodifiableList(key.getValue()));
+		}
+		return Collections.unmodifiableMap(keys);
+	}
+
+	public List<String> getVars (String category, String key) {
+		return Collections.unmodifiableList(this.environment.getVars(category, key));
+	}
+
+}
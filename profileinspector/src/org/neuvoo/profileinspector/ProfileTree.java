@@ -0,0 +1,286 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.TreeMap;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Resolves every profile under a directory at once. Every directory holding a
+ * profile file is a node, and so is every profile one of them inherits from,
+ * under the directory or not. The parent files are read once to build the
+ * inheritance graph, and nodes that inherit from a cycle (or are in one) are
+ * reported and left out.
+ *
+ * The rest are resolved on a ForkJoinPool, each once its first parent is done,
+ * starting from a snapshot of what that parent resolved to instead of
+ * resolving it again (see Profile). Later parents stack on top of what came before them, so
+ * those are merged again; their files are still only parsed once, as they all
+ * share one ParsedFileCache.
+ */
+class ProfileTree {
+
+	private static class Node {
+		final String path; // canonical
+		final boolean underRoot;
+		final Vector<Node> parents = new Vector<Node>();
+		final Vector<Node> firstChildren = new Vector<Node>(); // nodes whose first parent this is
+		boolean inherited = false; // some node under the root inherits from this one
+		boolean cyclic = false;
+		volatile Profile profile = null;
+		volatile String failure = null;
+
+		Node (String path, boolean underRoot) {
+			this.path = path;
+			this.underRoot = underRoot;
+		}
+	}
+
+	private final ParsedFileCache parsedFiles;
+	private final boolean verbose;
+	private final boolean showMinus;
+	private final String search;
+	private final TreeMap<String,Node> nodes = new TreeMap<String,Node>(); // by canonical path, so leaves come out sorted
+	private final HashSet<String> fileNames = new HashSet<String>();
+
+	public ProfileTree (ParsedFileCache parsedFiles, boolean verbose, boolean showMinus, String search) {
+		this.parsedFiles = parsedFiles;
+		this.verbose = verbose;
+		this.showMinus = showMinus;
+		this.search = search;
+		for (ProfileFile[] round: Profile.createFiles(".", false, false, "")) {
+			for (ProfileFile file: round) {
+				this.fileNames.add(file.getFileName());
+			}
+		}
+	}
+
+	/**
+	 * Finds the profiles under root and everything they inherit from, and
+	 * reports the ones that cannot be resolved because of a cycle.
+	 */
+	public void build (File root) throws IOException {
+		Vector<Node> pending = new Vector<Node>();
+		this.findProfiles(root, pending);
+		while (!pending.isEmpty()) {
+			Node node = pending.remove(pending.size() - 1);
+			ParsedProfileFile parents = this.parsedFiles.get(Profile.createFiles(node.path, this.verbose, this.showMinus, this.search)[0][0]);
+			if (parents.getStatus() != ParsedProfileFile.STATUS_FOUND) {
+				continue;
+			}
+			for (int l = 0; l < parents.getLineCount(); l++) {
+				String parentPath = this.parsedFiles.getCanonicalPath(node.path + "/" + this.parsedFiles.getSymbols().get(parents.getPieces(l)[0]));
+				Node parent = this.nodes.get(parentPath);
+				if (parent == null) {
+					parent = new Node(parentPath, false);
+					this.nodes.put(parentPath, parent);
+					pending.add(parent);
+				}
+				if (node.underRoot) {
+					parent.inherited = true;
+				}
+				if (node.parents.isEmpty()) {
+					parent.firstChildren.add(node);
+				}
+				node.parents.add(parent);
+			}
+		}
+		this.findCycles();
+	}
+
+	private void findProfiles (File directory, Vector<Node> found) throws IOException {
+		File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		boolean isProfile = false;
+		for (File child: children) {
+			if (child.getName().startsWith(".")) {
+				continue;
+			} else if (child.isDirectory()) {
+				this.findProfiles(child, found);
+			} else if (this.fileNames.contains(child.getName())) {
+				isProfile = true;
+			}
+		}
+		if (isProfile) {
+			String path = this.parsedFiles.getCanonicalPath(directory.getPath());
+			if (!this.nodes.containsKey(path)) {
+				Node node = new Node(path, true);
+				this.nodes.put(path, node);
+				found.add(node);
+			}
+		}
+	}
+
+	/**
+	 * Peels off nodes whose parents are all resolvable, children after parents
+	 * (Kahn's algorithm); whatever is left inherits from a cycle.
+	 */
+	private void findCycles () {
+		LinkedHashMap<Node,Integer> unresolvedParents = new LinkedHashMap<Node,Integer>();
+		Vector<Node> ready = new Vector<Node>();
+		LinkedHashMap<Node,Vector<Node>> children = new LinkedHashMap<Node,Vector<Node>>();
+		for (Node node: this.nodes.values()) {
+			unresolvedParents.put(node, node.parents.size());
+			if (node.parents.isEmpty()) {
+				ready.add(node);
+			}
+			for (Node parent: node.parents) {
+				Vector<Node> parentChildren = children.get(parent);
+				if (parentChildren == null) {
+					parentChildren = new Vector<Node>();
+					children.put(parent, parentChildren);
+				}
+				parentChildren.add(node); // once per edge, as it is counted once per edge
+			}
+		}
+		while (!ready.isEmpty()) {
+			Node node = ready.remove(ready.size() - 1);
+			unresolvedParents.remove(node);
+			Vector<Node> nodeChildren = children.get(node);
+			if (nodeChildren == null) {
+				continue;
+			}
+			for (Node child: nodeChildren) {
+				int left = unresolvedParents.get(child) - 1;
+				unresolvedParents.put(child, left);
+				if (left == 0) {
+					ready.add(child);
+				}
+			}
+		}
+
+		for (Node node: unresolvedParents.keySet()) {
+			node.cyclic = true;
+		}
+		for (Node node: unresolvedParents.keySet()) {
+			// Each of these has a parent left over too; following them must come round to a cycle
+			HashSet<Node> visited = new HashSet<Node>();
+			Node inCycle = node;
+			while (visited.add(inCycle)) {
+				for (Node parent: inCycle.parents) {
+					if (parent.cyclic) {
+						inCycle = parent;
+						break;
+					}
+				}
+			}
+			this.parsedFiles.getDiagnostics().report(Diagnostics.PROFILE_CYCLE, node.path, -1, inCycle.path);
+			node.failure = "it inherits from a cycle";
+		}
+	}
+
+	/**
+	 * Resolves every node that is not part of or below a cycle.
+	 */
+	public void resolve (ForkJoinPool pool) {
+		Vector<NodeTask> roots = new Vector<NodeTask>();
+		for (Node node: this.nodes.values()) {
+			if (node.parents.isEmpty()) {
+				roots.add(new NodeTask(node));
+			}
+		}
+		pool.invoke(new RecursiveAction() {
+			protected void compute () {
+				RecursiveAction.invokeAll(roots);
+			}
+		});
+	}
+
+	private class NodeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final Node node;
+
+		NodeTask (Node node) {
+			this.node = node;
+		}
+
+		protected void compute () {
+			Node firstParent = this.node.parents.isEmpty() ? null : this.node.parents.get(0);
+			if (firstParent != null && firstParent.profile == null) {
+				this.node.failure = "its parent " + firstParent.path + " could not be resolved";
+			} else {
+				try {
+					this.node.profile = new Profile(this.node.path, new ProfileEnvironment(parsedFiles.getSymbols()), verbose, showMinus, search, parsedFiles, (firstParent != null) ? firstParent.profile : null);
+				} catch (IOException e) {
+					this.node.failure = e.getMessage();
+				} catch (IllegalArgumentException e) {
+					this.node.failure = e.getMessage();
+				}
+			}
+
+			Vector<NodeTask> children = new Vector<NodeTask>();
+			for (Node child: this.node.firstChildren) {
+				if (!child.cyclic) {
+					children.add(new NodeTask(child));
+				}
+			}
+			RecursiveAction.invokeAll(children);
+		}
+	}
+
+	public int getNodeCount () {
+		return this.nodes.size();
+	}
+
+	/**
+	 * The profiles under the root that none of them inherits from, by path.
+	 * Each is either resolved or has a failure.
+	 */
+	public Vector<String> getLeaves () {
+		Vector<String> leaves = new Vector<String>();
+		for (Node node: this.nodes.values()) {
+			if (node.underRoot && !node.inherited) {
+				leaves.add(node.path);
+			}
+		}
+		return leaves;
+	}
+
+	public Profile getProfile (String path) {
+		return this.nodes.get(path).profile;
+	}
+
+	public String getFailure (String path) {
+		return this.nodes.get(path).failure;
+	}
+
+}
@@ -0,0 +1,189 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Action w: resolves a profile, then watches every directory it inherits from.
+ * When a profile file changes, only the category named after it is merged
+ * again (from the parsed files still in memory, apart from the changed one)
+ * and printed. Changes to parent or eapi files affect everything after them,
+ * so those resolve the whole profile again.
+ */
+class ProfileWatcher {
+
+	private static final long SETTLE_MILLIS = 20; // editors tend to write a file in several steps
+
+	private ProfileInspector inspector = null;
+	private boolean verbose = false;
+	private String path = "";
+	private Profile profile = null;
+	private WatchService watchService = null;
+	private HashMap<WatchKey,String> watchedProfiles = new HashMap<WatchKey,String>(); // key -> canonical path
+	private HashMap<String,ProfileFile> fileNames = new HashMap<String,ProfileFile>(); // every file name a profile can have
+
+	public ProfileWatcher (ProfileInspector inspector, String path, boolean verbose) {
+		this.inspector = inspector;
+		this.path = path;
+		this.verbose = verbose;
+	}
+
+	public void watch () throws IOException {
+		this.watchService = FileSystems.getDefault().newWatchService();
+		this.resolve();
+
+		while (true) {
+			WatchKey key;
+			try {
+				key = this.watchService.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+
+			// Gather everything that changed in this burst before merging anything
+			LinkedHashSet<String> changedFiles = new LinkedHashSet<String>(); // canonical profile path + "/" + file name
+			while (key != null) {
+				String profilePath = this.watchedProfiles.get(key);
+				for (WatchEvent<?> event: key.pollEvents()) {
+					if (profilePath != null && event.context() instanceof Path) {
+						String fileName = ((Path)event.context()).getFileName().toString();
+						if (this.fileNames.containsKey(fileName)) {
+							changedFiles.add(profilePath + "/" + fileName);
+						}
+					}
+				}
+				key.reset();
+				try {
+					key = this.watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+			if (!changedFiles.isEmpty()) {
+				this.update(changedFiles);
+			}
+		}
+	}
+
+	private void update (Set<String> changedFiles) throws IOException {
+		LinkedHashSet<String> changedCategories = new LinkedHashSet<String>();
+		boolean resolveAll = false;
+		for (String changedFile: changedFiles) {
+			File file = new File(changedFile);
+			String fileName = file.getName();
+			if (this.verbose) System.err.println("Changed: " + changedFile);
+			this.profile.getParsedFiles().invalidate(file.getParent(), fileName);
+			if (this.isFirstRound(fileName)) {
+				resolveAll = true; // parents and EAPI change how everything after them is merged
+			}
+			changedCategories.add(fileName);
+		}
+
+		try {
+			if (resolveAll) {
+				this.resolve();
+				return;
+			}
+			for (String fileName: changedCategories) {
+				ProfileEnvironment scratch = new ProfileEnvironment(this.profile.getEnvironment().getSymbols());
+				this.profile.reapply(fileName, scratch);
+				this.profile.getEnvironment().setCategoryIds(fileName, scratch.getCategoryIds(fileName));
+				System.out.print(this.profile.getHumanOutput(this.fileNames.get(fileName)));
+			}
+		} catch (IllegalArgumentException e) {
+			System.err.println("Error: " + e.getMessage()); // keep watching, the next save may fix it
+		} catch (FileNotFoundException e) {
+			System.err.println("Error: " + e.getMessage());
+		} finally {
+			this.profile.getParsedFiles().getDiagnostics().flush();
+		}
+		System.out.flush();
+	}
+
+	private void resolve () throws IOException {
+		this.profile = this.inspector.resolve(this.path);
+		PrintWriter out = new PrintWriter(System.out);
+		this.profile.writeHumanOutput(out);
+		out.println();
+		out.flush();
+
+		this.fileNames.clear();
+		for (ProfileFile[] round: this.profile.getFiles()) {
+			for (ProfileFile file: round) {
+				this.fileNames.put(file.getFileName(), file);
+			}
+		}
+
+		// Parents may have changed, so start over with what is watched
+		for (WatchKey key: this.watchedProfiles.keySet()) {
+			key.cancel();
+		}
+		this.watchedProfiles.clear();
+		ParsedFileCache parsedFiles = this.profile.getParsedFiles();
+		for (String canonicalPath: parsedFiles.getInheritanceGraph().getAncestors(parsedFiles.getCanonicalPath(this.profile.getPath()))) {
+			this.watchProfile(canonicalPath);
+		}
+	}
+
+	private void watchProfile (String canonicalPath) throws IOException {
+		File directory = new File(canonicalPath);
+		if (directory.isDirectory()) {
+			WatchKey key = Paths.get(canonicalPath).register(this.watchService,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY,
+				StandardWatchEventKinds.ENTRY_DELETE);
+			this.watchedProfiles.put(key, canonicalPath);
+		}
+	}
+
+	private boolean isFirstRound (String fileName) {
+		for (ProfileFile file: this.profile.getFiles()[0]) {
+			if (file.getFileName().equals(fileName)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
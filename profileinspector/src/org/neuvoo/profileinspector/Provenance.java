@@ -0,0 +1,200 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Vector;
+
+/**
+ * Where every value of a resolution came from: one event for each value a file
+ * set, negated or carried over from a variable, and for each key or category a
+ * file replaced instead of appending to. Events are kept in the order they
+ * were applied as runs of ints in one array (file id, line, kind, category,
+ * key, value, the value without any prefix and the piece as written, all but
+ * the first three as SymbolTable ids), so recording one costs no objects. The
+ * value without any prefix is what a query is matched on, so asking about e
+ * also finds +e and -e.
+ *
+ * Only kept when a ProfileEnvironment is given one; otherwise ProfileFile skips
+ * it with one null check per value.
+ */
+class Provenance {
+
+	public static final int SET = 0;
+	public static final int NEGATE = 1;
+	public static final int EXPAND = 2; // carried over by a $VARIABLE
+	public static final int REPLACE = 3; // a key's earlier values were dropped
+	public static final int RESET = 4; // a category's earlier keys were dropped
+
+	private static final int FILE = 0;
+	private static final int LINE = 1;
+	private static final int KIND = 2;
+	private static final int CATEGORY = 3;
+	private static final int KEY = 4;
+	private static final int VALUE = 5;
+	private static final int UNPREFIXED = 6;
+	private static final int PIECE = 7;
+	private static final int EVENT_SIZE = 8;
+
+	private int[] events = new int[EVENT_SIZE * 1024];
+	private int eventCount = 0;
+	private Vector<String> paths = new Vector<String>();
+	private HashMap<String,Integer> pathIds = new HashMap<String,Integer>();
+
+	public int getFileId (String path) {
+		Integer id = this.pathIds.get(path);
+		if (id == null) {
+			id = this.paths.size();
+			this.paths.add(path);
+			this.pathIds.put(path, id);
+		}
+		return id;
+	}
+
+	public void record (int file, int line, int kind, int category, int key, int value, int unprefixed, int piece) {
+		int offset = this.eventCount * EVENT_SIZE;
+		if (offset + EVENT_SIZE > this.events.length) {
+			this.events = Arrays.copyOf(this.events, this.events.length * 2);
+		}
+		this.events[offset + FILE] = file;
+		this.events[offset + LINE] = line;
+		this.events[offset + KIND] = kind;
+		this.events[offset + CATEGORY] = category;
+		this.events[offset + KEY] = key;
+		this.events[offset + VALUE] = value;
+		this.events[offset + UNPREFIXED] = unprefixed;
+		this.events[offset + PIECE] = piece;
+		this.eventCount++;
+	}
+
+	public int getEventCount () {
+		return this.eventCount;
+	}
+
+	/**
+	 * Answers one query per line, "category value" for lists or "category key
+	 * value" otherwise, as blame() does.
+	 */
+	public void blameAll (ProfileEnvironment environment, BufferedReader queries, PrintWriter out) throws IOException {
+		String line;
+		while ((line = queries.readLine()) != null) {
+			line = line.trim();
+			if (line.equals("") || line.startsWith("#")) {
+				continue;
+			}
+			String[] parts = line.split("[ \t]+");
+			if (parts.length == 2) {
+				this.blame(environment, parts[0], "list", parts[1], out);
+			} else if (parts.length == 3) {
+				this.blame(environment, parts[0], parts[1], parts[2], out);
+			} else {
+				System.err.println("Warning: not a category, key and value: " + line);
+			}
+			if (!queries.ready()) {
+				out.flush(); // someone may be waiting on the answers so far
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Explains why value is or is not among the values of key in category:
+	 * whether it is there now, then every event that touched it (prefixes
+	 * aside), oldest first. A key or category being dropped as a whole is only
+	 * listed once value had been seen.
+	 */
+	public void blame (ProfileEnvironment environment, String category, String key, String value, PrintWriter out) {
+		SymbolTable symbols = environment.getSymbols();
+		String unprefixed = StackedValues.stripPrefixes(value, ProfileFile.LINEPIECE_PREFIX_ALL);
+		int categoryId = symbols.find(category); // a query never adds names
+		int keyId = symbols.find(key);
+		int unprefixedId = symbols.find(unprefixed);
+
+		StringBuilder present = new StringBuilder();
+		if (keyId >= 0) {
+			for (int v: environment.getValueIds(category, keyId)) {
+				if (StackedValues.stripPrefixes(symbols.get(v), ProfileFile.LINEPIECE_PREFIX_ALL).equals(unprefixed)) {
+					present.append((present.length() == 0) ? " " : ", ").append(symbols.get(v));
+				}
+			}
+		}
+		out.println(category + " " + key + " " + value + ": " + ((present.length() > 0) ? "present as" + present : "absent"));
+		if (categoryId < 0 || keyId < 0 || unprefixedId < 0) {
+			return; // never read, so nothing touched it
+		}
+
+		boolean seen = false;
+		for (int offset = 0; offset < this.eventCount * EVENT_SIZE; offset += EVENT_SIZE) {
+			if (this.events[offset + CATEGORY] != categoryId) {
+				continue;
+			}
+			int kind = this.events[offset + KIND];
+			if (kind == RESET || (kind == REPLACE && this.events[offset + KEY] == keyId)) {
+				if (seen) {
+					this.writeEvent(offset, symbols, out);
+				}
+			} else if (this.events[offset + KEY] == keyId && this.events[offset + UNPREFIXED] == unprefixedId) {
+				seen = true;
+				this.writeEvent(offset, symbols, out);
+			}
+		}
+	}
+
+	private void writeEvent (int offset, SymbolTable symbols, PrintWriter out) {
+		String where = this.paths.get(this.events[offset + FILE]);
+		if (this.events[offset + LINE] > 0) {
+			where += ":" + this.events[offset + LINE];
+		}
+		switch (this.events[offset + KIND]) {
+			case SET:
+				out.println("\t" + where + ": sets " + symbols.get(this.events[offset + VALUE]));
+				break;
+			case NEGATE:
+				out.println("\t" + where + ": negates it with " + symbols.get(this.events[offset + VALUE]));
+				break;
+			case EXPAND:
+				out.println("\t" + where + ": carries over " + symbols.get(this.events[offset + VALUE]) + " with " + symbols.get(this.events[offset + PIECE]));
+				break;
+			case REPLACE:
+				out.println("\t" + where + ": replaces every earlier value of " + symbols.get(this.events[offset + KEY]));
+				break;
+			case RESET:
+				out.println("\t" + where + ": does not inherit, so drops every earlier value");
+				break;
+		}
+	}
+
+}
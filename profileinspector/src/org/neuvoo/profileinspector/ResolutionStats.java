@@ -0,0 +1,128 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The FileStats of every file of one resolution, for -t. Kept by the
+ * resolution's ParsedFileCache, which times the parsing; Profile times the
+ * merging.
+ */
+class ResolutionStats {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	private ConcurrentHashMap<String,FileStats> files = new ConcurrentHashMap<String,FileStats>();
+	private long startNanos = System.nanoTime();
+
+	public FileStats get (String path) {
+		FileStats stats = this.files.get(path);
+		if (stats == null) {
+			stats = new FileStats(path);
+			FileStats existingStats = this.files.putIfAbsent(path, stats);
+			if (existingStats != null) {
+				stats = existingStats;
+			}
+		}
+		return stats;
+	}
+
+	/**
+	 * CPU time of the current thread, or 0 where the JVM can't tell.
+	 */
+	public static long getCpuTime () {
+		return THREADS.isCurrentThreadCpuTimeSupported() ? THREADS.getCurrentThreadCpuTime() : 0;
+	}
+
+	/**
+	 * Prints every file, the most expensive first, then the same by profile directory.
+	 */
+	public void print (PrintStream out) {
+		FileStats[] sorted = this.files.values().toArray(new FileStats[0]);
+		Arrays.sort(sorted, new Comparator<FileStats>() {
+			public int compare (FileStats a, FileStats b) {
+				return Long.compare(b.getNanos(), a.getNanos());
+			}
+		});
+
+		long nanos = 0, cpuNanos = 0, bytes = 0;
+		for (FileStats file: sorted) {
+			nanos += file.getNanos();
+			cpuNanos += file.getCpuNanos();
+			bytes += file.getBytes();
+		}
+		out.println(String.format("Stats: %d files, %d bytes read, %.1f ms in files (%.1f ms CPU), %.1f ms in all",
+			sorted.length, bytes, nanos / 1e6, cpuNanos / 1e6, (System.nanoTime() - this.startNanos) / 1e6));
+		out.println("   wall ms   parse ms   merge ms    cpu ms      bytes   lines  tokens merges   values  diags  file");
+		for (FileStats file: sorted) {
+			out.println(String.format("%10.2f %10.2f %10.2f %9.2f %10d %7d %7d %6d %8d %6d  %s",
+				file.getNanos() / 1e6, file.getParseNanos() / 1e6, file.getMergeNanos() / 1e6, file.getCpuNanos() / 1e6,
+				file.getBytes(), file.getLines(), file.getTokens(), file.getMerges(), file.getValues(), file.getDiagnostics(), file.getPath()));
+		}
+
+		// The same, summed up by the directory the files are in
+		LinkedHashMap<String,long[]> profiles = new LinkedHashMap<String,long[]>(); // {nanos, cpu nanos, files}, still most expensive first
+		for (FileStats file: sorted) {
+			String profile = new File(file.getPath()).getParent();
+			long[] totals = profiles.get(profile);
+			if (totals == null) {
+				totals = new long[3];
+				profiles.put(profile, totals);
+			}
+			totals[0] += file.getNanos();
+			totals[1] += file.getCpuNanos();
+			totals[2]++;
+		}
+		Vector<Map.Entry<String,long[]>> byProfile = new Vector<Map.Entry<String,long[]>>(profiles.entrySet());
+		Collections.sort(byProfile, new Comparator<Map.Entry<String,long[]>>() {
+			public int compare (Map.Entry<String,long[]> a, Map.Entry<String,long[]> b) {
+				return Long.compare(b.getValue()[0], a.getValue()[0]);
+			}
+		});
+		out.println("   wall ms    cpu ms  files  profile");
+		for (Map.Entry<String,long[]> profile: byProfile) {
+			out.println(String.format("%10.2f %9.2f %6d  %s", profile.getValue()[0] / 1e6, profile.getValue()[1] / 1e6, profile.getValue()[2], profile.getKey()));
+		}
+	}
+
+}
@@ -0,0 +1,203 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * The values of one key while a profile file is being merged: the values it
+ * inherited, and the ones the file has added since the key was last set.
+ * Adding, overriding and negating a value are hash lookups; the merged list is
+ * only built when toArray() is called. Values are SymbolTable ids.
+ *
+ * USE flag lists are given a FlagDictionary, and then keep what was added and
+ * overridden as BitSets instead: adding is setting a bit, and dropping the
+ * overridden inherited values is one bit test per value. The order values were
+ * added in is only kept to build the list.
+ *
+ * The result is the same as merging every piece in turn with mergeValues():
+ * inherited values whose unprefixed form was never added, followed by the
+ * added values in the order they were last added, without the negating ones
+ * (unless the minus prefix is to be shown).
+ */
+class StackedValues {
+
+	private SymbolTable symbols = null; // the one the ids are from
+	private int[] inherited = null; // null when the key replaces what it inherits
+	private String prefixesToIgnore = "";
+	private boolean showMinus = false;
+
+	// Without a FlagDictionary
+	private LinkedHashSet<Integer> added = null; // exact values, in the order they were last added
+	private HashSet<Integer> overridden = null; // unprefixed forms of everything added
+
+	// With a FlagDictionary
+	private FlagDictionary flags = null;
+	private BitSet addedValues = null; // FlagDictionary values currently added
+	private BitSet overriddenFlags = null; // FlagDictionary flags of everything added
+	private int[] addOrder = new int[0]; // every value added, oldest first, repeats included
+	private int addCount = 0;
+
+	public StackedValues (SymbolTable symbols, int[] inherited, String prefixesToIgnore, boolean showMinus) {
+		this(symbols, inherited, prefixesToIgnore, showMinus, null);
+	}
+
+	public StackedValues (SymbolTable symbols, int[] inherited, String prefixesToIgnore, boolean showMinus, FlagDictionary flags) {
+		this.symbols = symbols;
+		this.inherited = inherited;
+		this.prefixesToIgnore = prefixesToIgnore;
+		this.showMinus = showMinus;
+		if (flags != null && prefixesToIgnore.equals(FlagDictionary.PREFIXES)) {
+			this.flags = flags;
+			this.addedValues = new BitSet();
+			this.overriddenFlags = new BitSet();
+			this.addOrder = new int[8];
+		} else {
+			this.added = new LinkedHashSet<Integer>();
+			this.overridden = new HashSet<Integer>();
+		}
+	}
+
+	public void add (int value) {
+		if (this.flags != null) {
+			this.addFlag(value);
+			return;
+		}
+		this.added.remove(value); // a value added again moves to the end
+		if (this.inherited == null) {
+			this.added.add(value);
+			return;
+		}
+		this.overridden.add(StackedValues.stripPrefixes(this.symbols, value, this.prefixesToIgnore));
+		if (this.showMinus || !StackedValues.hasMinusPrefix(this.symbols.get(value), this.prefixesToIgnore)) {
+			this.added.add(value); // a - prefix negates but does not appear in the list
+		}
+	}
+
+	private void addFlag (int value) {
+		int valueIndex = this.flags.getValue(value);
+		if (this.inherited != null) {
+			this.overriddenFlags.set(this.flags.getFlag(value));
+			if (!this.showMinus && this.flags.isNegation(value)) {
+				this.addedValues.clear(valueIndex); // a - prefix negates but does not appear in the list
+				return;
+			}
+		}
+		this.addedValues.set(valueIndex);
+		if (this.addCount == this.addOrder.length) {
+			this.addOrder = Arrays.copyOf(this.addOrder, this.addCount * 2);
+		}
+		this.addOrder[this.addCount++] = value;
+	}
+
+	public int[] getAdded () {
+		if (this.flags != null) {
+			return this.getAddedFlags();
+		}
+		int[] values = new int[this.added.size()];
+		int size = 0;
+		for (int value: this.added) {
+			values[size++] = value;
+		}
+		return values;
+	}
+
+	private int[] getAddedFlags () {
+		// Walk back from the newest, keeping each value where it was added last
+		int[] values = new int[this.addCount];
+		int first = values.length;
+		BitSet seen = new BitSet();
+		for (int i = this.addCount - 1; i >= 0; i--) {
+			int valueIndex = this.flags.getValue(this.addOrder[i]);
+			if (this.addedValues.get(valueIndex) && !seen.get(valueIndex)) {
+				seen.set(valueIndex);
+				values[--first] = this.addOrder[i];
+			}
+		}
+		return Arrays.copyOfRange(values, first, values.length);
+	}
+
+	public int[] toArray () {
+		int[] added = this.getAdded();
+		if (this.inherited == null) {
+			return added;
+		}
+		int[] values = new int[this.inherited.length + added.length];
+		int size = 0;
+		for (int value: this.inherited) {
+			if (!this.isOverridden(value)) {
+				values[size++] = value;
+			}
+		}
+		System.arraycopy(added, 0, values, size, added.length);
+		return Arrays.copyOf(values, size + added.length);
+	}
+
+	private boolean isOverridden (int value) {
+		if (this.flags != null) {
+			return this.overriddenFlags.get(this.flags.getFlag(value));
+		}
+		return this.overridden.contains(StackedValues.stripPrefixes(this.symbols, value, this.prefixesToIgnore));
+	}
+
+	public static int stripPrefixes (SymbolTable symbols, int value, String prefixes) {
+		String name = symbols.get(value);
+		String stripped = StackedValues.stripPrefixes(name, prefixes);
+		if (stripped.length() == name.length()) {
+			return value; // nothing to strip, which is the usual case
+		}
+		return symbols.intern(stripped);
+	}
+
+	public static String stripPrefixes (String value, String prefixes) {
+		if (prefixes.equals("")) {
+			return value;
+		}
+		int start = 0;
+		while (start < value.length() && prefixes.indexOf(value.charAt(start)) > -1) {
+			start++;
+		}
+		return value.substring(start);
+	}
+
+	public static boolean hasMinusPrefix (String value, String prefixes) {
+		if (prefixes.indexOf('-') < 0) {
+			return false;
+		}
+		int minusPrefixPos = value.indexOf('-');
+		return minusPrefixPos > -1 && minusPrefixPos < value.length() - StackedValues.stripPrefixes(value, prefixes).length();
+	}
+
+}
@@ -0,0 +1,187 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gives every distinct key and value read from a profile a small int id, so
+ * environments can hold int arrays instead of their own copies of the same
+ * Strings. Ids are never reused or forgotten; get() always returns the one
+ * String instance behind an id. Each ParsedFileCache has a table of its own,
+ * so ids only mean something within one resolution, and the table goes away
+ * with the last environment holding its ids. Anything that only looks a name
+ * up, such as a query, uses find(), which never adds one.
+ *
+ * Interning is synchronized, since files are parsed concurrently; looking an
+ * id up is not, as an id only ever reaches another thread through something
+ * that already publishes it (a FutureTask, a lock).
+ *
+ * The PackageAtom parsed from an id is kept here too, so it goes away with
+ * the ids it is keyed on.
+ */
+class SymbolTable {
+
+	// Every table starts with these, so their ids are the same in all of them
+	public static final int LIST = 0; // the key of every 2D file
+	public static final int USE = 1;
+
+	private volatile String[] names = new String[1024];
+	private int size = 0;
+	private int[] slots = new int[2048]; // open addressing: id + 1, or 0 when free
+	private final ConcurrentHashMap<Integer,PackageAtom> atoms = new ConcurrentHashMap<Integer,PackageAtom>(); // id -> what PackageAtom made of it
+
+	public String get (int id) {
+		return this.names[id];
+	}
+
+	public SymbolTable () {
+		this.intern("list");
+		this.intern("USE");
+	}
+
+	public ConcurrentHashMap<Integer,PackageAtom> getAtoms () {
+		return this.atoms;
+	}
+
+	public int size () {
+		synchronized (this) {
+			return this.size;
+		}
+	}
+
+	/**
+	 * The id of name, or -1 if it has never been interned.
+	 */
+	public synchronized int find (String name) {
+		int mask = this.slots.length - 1;
+		int slot = name.hashCode() & mask;
+		while (this.slots[slot] != 0) {
+			int id = this.slots[slot] - 1;
+			if (this.names[id].equals(name)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	public synchronized int intern (String name) {
+		int mask = this.slots.length - 1;
+		int slot = name.hashCode() & mask;
+		while (this.slots[slot] != 0) {
+			int id = this.slots[slot] - 1;
+			if (this.names[id].equals(name)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return this.add(name, slot);
+	}
+
+	/**
+	 * The id of the text in chars[from, to). Nothing is allocated unless the
+	 * text has never been seen before.
+	 */
+	public synchronized int intern (char[] chars, int from, int to) {
+		int hash = 0;
+		for (int i = from; i < to; i++) {
+			hash = 31 * hash + chars[i]; // same as String.hashCode()
+		}
+		int mask = this.slots.length - 1;
+		int slot = hash & mask;
+		while (this.slots[slot] != 0) {
+			int id = this.slots[slot] - 1;
+			if (SymbolTable.regionEquals(this.names[id], chars, from, to)) {
+				return id;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return this.add(new String(chars, from, to - from), slot);
+	}
+
+	private static boolean regionEquals (String name, char[] chars, int from, int to) {
+		if (name.length() != to - from) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != chars[from + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int add (String name, int slot) {
+		int id = this.size;
+		if (id == this.names.length) {
+			String[] grown = new String[this.names.length * 2];
+			System.arraycopy(this.names, 0, grown, 0, id);
+			grown[id] = name;
+			this.names = grown;
+		} else {
+			this.names[id] = name;
+		}
+		this.size++;
+		this.slots[slot] = id + 1;
+		if (this.size * 2 > this.slots.length) { // keep the table at most half full
+			int[] slots = new int[this.slots.length * 2];
+			int mask = slots.length - 1;
+			for (int i = 0; i < this.size; i++) {
+				int s = this.names[i].hashCode() & mask;
+				while (slots[s] != 0) {
+					s = (s + 1) & mask;
+				}
+				slots[s] = i + 1;
+			}
+			this.slots = slots;
+		}
+		return id;
+	}
+
+	public String[] toStrings (int[] ids) {
+		String[] strings = new String[ids.length];
+		for (int i = 0; i < ids.length; i++) {
+			strings[i] = this.names[ids[i]];
+		}
+		return strings;
+	}
+
+	public int[] intern (String[] names) {
+		int[] ids = new int[names.length];
+		for (int i = 0; i < names.length; i++) {
+			ids[i] = this.intern(names[i]);
+		}
+		return ids;
+	}
+
+}
@@ -0,0 +1,279 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Searches every profile file under a directory for many patterns at once.
+ *
+ * Literal patterns are compiled together into one AhoCorasick automaton, so a
+ * file is read once whatever the number of them. Patterns written as /regex/
+ * are matched line by line with java.util.regex after that. Files are scanned
+ * in parallel, but the hits come out ordered by file, line and column, as
+ *
+ *   path:line:column: pattern
+ *
+ * or as JSON Lines. Columns count bytes from one.
+ */
+class TreeSearch {
+
+	private final Vector<String> patterns = new Vector<String>(); // as given, literals first
+	private int literalCount;
+	private AhoCorasick literals;
+	private Pattern[] regexes;
+	private final HashSet<String> fileNames = new HashSet<String>();
+
+	public TreeSearch (Vector<String> patterns) {
+		LinkedHashSet<String> literalPatterns = new LinkedHashSet<String>();
+		LinkedHashSet<String> regexPatterns = new LinkedHashSet<String>();
+		for (String pattern : patterns) {
+			if (pattern.length() > 2 && pattern.startsWith("/") && pattern.endsWith("/")) {
+				regexPatterns.add(pattern);
+			} else if (!pattern.equals("")) {
+				literalPatterns.add(pattern);
+			}
+		}
+
+		byte[][] bytes = new byte[literalPatterns.size()][];
+		for (String pattern : literalPatterns) {
+			bytes[this.patterns.size()] = pattern.getBytes(StandardCharsets.UTF_8);
+			this.patterns.add(pattern);
+		}
+		this.literalCount = bytes.length;
+		this.literals = new AhoCorasick(bytes);
+
+		this.regexes = new Pattern[regexPatterns.size()];
+		for (String pattern : regexPatterns) {
+			this.regexes[this.patterns.size() - this.literalCount] = Pattern.compile(pattern.substring(1, pattern.length() - 1));
+			this.patterns.add(pattern);
+		}
+
+		ProfileFile[][] files = Profile.createFiles(".", false, false, "");
+		for (int round = 0; round < files.length; round++) {
+			for (int file = 0; file < files[round].length; file++) {
+				this.fileNames.add(files[round][file].getFileName());
+			}
+		}
+	}
+
+	/**
+	 * Reads patterns one per line, skipping blank lines.
+	 */
+	public static void readPatterns (BufferedReader in, Vector<String> patterns) throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (!line.trim().equals("")) {
+				patterns.add(line);
+			}
+		}
+	}
+
+	public int getPatternCount () {
+		return this.patterns.size();
+	}
+
+	/**
+	 * Searches the profile files under root, and returns how many hits there
+	 * were. Without an executor the files are searched one after the other.
+	 */
+	public int search (File root, ExecutorService executor, boolean json, PrintWriter out) throws IOException {
+		Vector<File> files = new Vector<File>();
+		this.findFiles(root, files);
+
+		Vector<Future<int[]>> results = new Vector<Future<int[]>>();
+		for (final File file : files) {
+			Callable<int[]> task = new Callable<int[]>() {
+				public int[] call () throws IOException {
+					return TreeSearch.this.searchFile(file);
+				}
+			};
+			if (executor != null) {
+				results.add(executor.submit(task));
+			}
+		}
+
+		int hitCount = 0;
+		for (int f = 0; f < files.size(); f++) {
+			int[] hits;
+			if (executor == null) {
+				hits = this.searchFile(files.get(f));
+			} else {
+				try {
+					hits = results.get(f).get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof IOException) {
+						throw (IOException)e.getCause();
+					}
+					throw new RuntimeException(e.getCause());
+				} catch (InterruptedException e) {
+					throw new IOException("interrupted while searching " + files.get(f));
+				}
+			}
+			for (int h = 0; h < hits.length; h += 3) {
+				this.writeHit(out, json, files.get(f).getPath(), hits[h], hits[h + 1], this.patterns.get(hits[h + 2]));
+			}
+			hitCount += hits.length / 3;
+		}
+		out.flush();
+		return hitCount;
+	}
+
+	private void findFiles (File directory, Vector<File> files) {
+		File[] children = directory.listFiles();
+		if (children == null) {
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			if (child.getName().startsWith(".")) {
+				continue; // version control and the like
+			}
+			if (child.isDirectory()) {
+				this.findFiles(child, files);
+			} else if (this.fileNames.contains(child.getName()) && child.isFile()) {
+				files.add(child);
+			}
+		}
+	}
+
+	/**
+	 * Returns the hits in a file as (line, column, pattern) triples, in order.
+	 */
+	int[] searchFile (File file) throws IOException {
+		byte[] data = Files.readAllBytes(file.toPath());
+		int[] hits = new int[48];
+		int hitsLength = 0;
+
+		int state = this.literals.getInitialState();
+		int line = 1;
+		int lineStart = 0;
+		for (int i = 0; i < data.length; i++) {
+			state = this.literals.next(state, data[i]);
+			int[] matches = this.literals.getMatches(state);
+			if (matches != null) {
+				for (int m = 0; m < matches.length; m++) {
+					if (hitsLength + 3 > hits.length) {
+						hits = Arrays.copyOf(hits, hits.length * 2);
+					}
+					hits[hitsLength++] = line;
+					hits[hitsLength++] = i - this.literals.getLength(matches[m]) + 2 - lineStart;
+					hits[hitsLength++] = matches[m];
+				}
+			}
+			if (data[i] == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+
+		if (this.regexes.length > 0) {
+			line = 1;
+			lineStart = 0;
+			for (int i = 0; i <= data.length; i++) {
+				if (i < data.length && data[i] != '\n') {
+					continue;
+				}
+				String text = new String(data, lineStart, i - lineStart, StandardCharsets.ISO_8859_1); // one char per byte, so columns agree
+				for (int r = 0; r < this.regexes.length; r++) {
+					Matcher matcher = this.regexes[r].matcher(text);
+					while (matcher.find()) {
+						if (matcher.end() == matcher.start()) {
+							continue; // matching nothing is not a hit
+						}
+						if (hitsLength + 3 > hits.length) {
+							hits = Arrays.copyOf(hits, hits.length * 2);
+						}
+						hits[hitsLength++] = line;
+						hits[hitsLength++] = matcher.start() + 1;
+						hits[hitsLength++] = this.literalCount + r;
+					}
+				}
+				line++;
+				lineStart = i + 1;
+			}
+		}
+
+		return TreeSearch.sortHits(hits, hitsLength);
+	}
+
+	private static int[] sortHits (final int[] hits, int length) {
+		Integer[] order = new Integer[length / 3];
+		for (int h = 0; h < order.length; h++) {
+			order[h] = h * 3;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare (Integer a, Integer b) {
+				for (int i = 0; i < 3; i++) {
+					if (hits[a + i] != hits[b + i]) {
+						return (hits[a + i] < hits[b + i]) ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		});
+		int[] sorted = new int[length];
+		for (int h = 0; h < order.length; h++) {
+			System.arraycopy(hits, order[h], sorted, h * 3, 3);
+		}
+		return sorted;
+	}
+
+	private void writeHit (PrintWriter out, boolean json, String path, int line, int column, String pattern) {
+		if (json) {
+			out.write("{\"file\":");
+			ProfileJsonWriter.writeString(out, path);
+			out.write(",\"line\":" + line + ",\"column\":" + column + ",\"pattern\":");
+			ProfileJsonWriter.writeString(out, pattern);
+			out.write("}\n");
+		} else {
+			out.println(path + ":" + line + ":" + column + ": " + pattern);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.nio.charset.Charset;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class AhoCorasickTest {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	@Test
+	public void findsOverlappingMatches () {
+		assertEquals(AhoCorasickTest.matches("1:1", "0:2", "3:2"), // she, he, hers
+			AhoCorasickTest.search(new String[] { "he", "she", "his", "hers" }, "ushers"));
+	}
+
+	@Test
+	public void reportsEveryPatternEndingAtAState () {
+		// a, aa and aaa all end on the last a; only the failure links find the shorter ones
+		assertEquals(AhoCorasickTest.matches("0:0", "1:0", "1:1", "2:0", "2:1", "2:2"),
+			AhoCorasickTest.search(new String[] { "aaa", "aa", "a" }, "aaa"));
+	}
+
+	@Test
+	public void keepsDuplicatePatternsApart () {
+		assertEquals(AhoCorasickTest.matches("0:0", "1:0"),
+			AhoCorasickTest.search(new String[] { "USE", "USE" }, "USE=x"));
+	}
+
+	@Test
+	public void restartsAfterAMismatch () {
+		assertEquals(AhoCorasickTest.matches("1:1"),
+			AhoCorasickTest.search(new String[] { "abcd", "bce" }, "abce"));
+		assertEquals(AhoCorasickTest.matches(),
+			AhoCorasickTest.search(new String[] { "abcd" }, "xyz"));
+	}
+
+	@Test
+	public void scansEveryByte () {
+		byte[][] patterns = { { (byte)0xff, 0 }, { (byte)0x80 } };
+		AhoCorasick automaton = new AhoCorasick(patterns);
+		int state = automaton.getInitialState();
+		TreeSet<String> found = new TreeSet<String>();
+		byte[] text = { 1, (byte)0x80, (byte)0xff, 0, (byte)0xff };
+		for (int i = 0; i < text.length; i++) {
+			state = automaton.next(state, text[i]);
+			AhoCorasickTest.collect(automaton, state, i, found);
+		}
+		assertEquals(AhoCorasickTest.matches("1:1", "0:2"), found);
+	}
+
+	@Test
+	public void agreesWithIndexOf () {
+		Random random = new Random(1);
+		for (int round = 0; round < 200; round++) {
+			String[] patterns = new String[1 + random.nextInt(8)];
+			for (int p = 0; p < patterns.length; p++) {
+				patterns[p] = AhoCorasickTest.randomText(random, 1 + random.nextInt(4));
+			}
+			String text = AhoCorasickTest.randomText(random, random.nextInt(64));
+
+			TreeSet<String> expected = new TreeSet<String>();
+			for (int p = 0; p < patterns.length; p++) {
+				for (int start = text.indexOf(patterns[p]); start >= 0; start = text.indexOf(patterns[p], start + 1)) {
+					expected.add(p + ":" + start);
+				}
+			}
+			assertEquals("patterns " + String.join(",", patterns) + " in " + text, expected, AhoCorasickTest.search(patterns, text));
+		}
+	}
+
+	/**
+	 * Every match, as "pattern:start".
+	 */
+	private static TreeSet<String> search (String[] patterns, String text) {
+		byte[][] bytes = new byte[patterns.length][];
+		for (int p = 0; p < patterns.length; p++) {
+			bytes[p] = patterns[p].getBytes(UTF8);
+		}
+		AhoCorasick automaton = new AhoCorasick(bytes);
+		TreeSet<String> found = new TreeSet<String>();
+		byte[] scanned = text.getBytes(UTF8);
+		int state = automaton.getInitialState();
+		for (int i = 0; i < scanned.length; i++) {
+			state = automaton.next(state, scanned[i]);
+			AhoCorasickTest.collect(automaton, state, i, found);
+		}
+		return found;
+	}
+
+	private static void collect (AhoCorasick automaton, int state, int end, TreeSet<String> found) {
+		int[] matches = automaton.getMatches(state);
+		if (matches == null) {
+			return;
+		}
+		for (int m = 0; m < matches.length; m++) {
+			found.add(matches[m] + ":" + (end + 1 - automaton.getLength(matches[m])));
+		}
+	}
+
+	private static TreeSet<String> matches (String... matches) {
+		TreeSet<String> set = new TreeSet<String>();
+		for (String match: matches) {
+			set.add(match);
+		}
+		return set;
+	}
+
+	private static String randomText (Random random, int length) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			text.append((char)('a' + random.nextInt(3))); // few letters, so patterns overlap often
+		}
+		return text.toString();
+	}
+
+}
@@ -0,0 +1,123 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.jargp.ArgumentProcessor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class EffectiveUseTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void perPackageNegationsTurnOffProfileWideFlags () throws IOException {
+		File profile = this.writeProfile();
+		assertEquals("dev-libs/bar a gtk", this.resolve(profile, false).query("dev-libs/bar"));
+		assertEquals("dev-libs/bar a gtk", this.resolve(profile, true).query("dev-libs/bar"));
+	}
+
+	@Test
+	public void otherPackagesKeepTheProfileWideFlags () throws IOException {
+		File profile = this.writeProfile();
+		assertEquals("dev-libs/baz a ssl forced", this.resolve(profile, false).query("dev-libs/baz"));
+	}
+
+	@Test
+	public void perPackageMasksTurnFlagsOff () throws IOException {
+		File profile = this.writeProfile();
+		EffectiveUseTest.write(new File(profile, "package.use.mask"), "dev-libs/baz ssl\n");
+		assertEquals("dev-libs/baz a forced", this.resolve(profile, false).query("dev-libs/baz"));
+	}
+
+	@Test
+	public void nonPackagesAreReportedAsWarnings () throws IOException {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		StringWriter answers = new StringWriter();
+		this.resolve(this.writeProfile(), false).queryAll(new BufferedReader(new StringReader("dev-libs/baz\n!!!\n")),
+			new PrintWriter(answers), new Diagnostics(new PrintStream(errors, true)));
+		assertEquals("dev-libs/baz a ssl forced" + System.getProperty("line.separator"), answers.toString());
+		assertTrue(errors.toString().contains("Warning: not a package: !!!"));
+	}
+
+	@Test
+	public void errorLevelSuppressesNonPackageWarnings () throws IOException {
+		ByteArrayOutputStream errors = new ByteArrayOutputStream();
+		Diagnostics diagnostics = new Diagnostics(new PrintStream(errors, true));
+		diagnostics.setThreshold(Diagnostics.SEVERITY_ERROR);
+		this.resolve(this.writeProfile(), false).queryAll(new BufferedReader(new StringReader("!!!\n")),
+			new PrintWriter(new StringWriter()), diagnostics);
+		assertEquals("", errors.toString());
+	}
+
+	/**
+	 * The profile as action u resolves it, given -m or not.
+	 */
+	private EffectiveUse resolve (File profile, boolean minus) throws IOException {
+		ProfileInspector inspector = new ProfileInspector();
+		String[] args = minus ? new String[] { "-a", "u", "-m", "-p", profile.getPath() } : new String[] { "-a", "u", "-p", profile.getPath() };
+		ArgumentProcessor.processArgs(args, ProfileInspector.ARG_DEFS, inspector);
+		return new EffectiveUse(inspector.resolve(profile.getPath()));
+	}
+
+	private File writeProfile () throws IOException {
+		File profile = this.folder.newFolder();
+		EffectiveUseTest.write(new File(profile, "make.defaults"), "USE=\"a ssl\"\n");
+		EffectiveUseTest.write(new File(profile, "use.force"), "forced\n");
+		EffectiveUseTest.write(new File(profile, "package.use"), "dev-libs/bar -ssl gtk\n");
+		EffectiveUseTest.write(new File(profile, "package.use.force"), "dev-libs/bar -forced\n");
+		return profile;
+	}
+
+	private static void write (File file, String text) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
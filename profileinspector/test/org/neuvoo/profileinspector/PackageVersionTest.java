@@ -0,0 +1,104 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PackageVersionTest {
+
+	// Oldest first; every pair is checked both ways
+	private static final String[] ASCENDING = {
+		"0.9",
+		"1.0_alpha",
+		"1.0_alpha1_beta", // one more suffix makes it older, unless that one is _p
+		"1.0_alpha1",
+		"1.0_alpha1_p",
+		"1.0_beta",
+		"1.0_pre2",
+		"1.0_pre10",
+		"1.0_rc1",
+		"1.0",
+		"1.0-r1",
+		"1.0-r2",
+		"1.0_p1",
+		"1.0a", // the letter is compared before the suffixes
+		"1.0b",
+		"1.0.1", // and the number of components before the letter
+		"1.01", // a component with a leading zero is compared as a string
+		"1.1",
+		"1.2",
+		"1.10",
+		"2",
+		"12345678901234567890"
+	};
+
+	@Test
+	public void ordersVersions () {
+		for (int i = 0; i < ASCENDING.length; i++) {
+			for (int j = 0; j < ASCENDING.length; j++) {
+				assertEquals(ASCENDING[i] + " against " + ASCENDING[j], Integer.signum(i - j), PackageVersion.compare(ASCENDING[i], ASCENDING[j]));
+			}
+		}
+	}
+
+	@Test
+	public void treatsEquivalentSpellingsAsEqual () {
+		assertEquals(0, PackageVersion.compare("1.0", "1.0-r0"));
+		assertEquals(0, PackageVersion.compare("01.2", "1.2"));
+		assertEquals(0, PackageVersion.compare("1.0", "1.00"));
+		assertEquals(0, PackageVersion.compare("1_p", "1_p0"));
+	}
+
+	@Test
+	public void validatesVersions () {
+		assertTrue(PackageVersion.isValid("1"));
+		assertTrue(PackageVersion.isValid("1.0a_beta2_p-r3"));
+		assertFalse(PackageVersion.isValid(""));
+		assertFalse(PackageVersion.isValid("a1"));
+		assertFalse(PackageVersion.isValid("1..0"));
+		assertFalse(PackageVersion.isValid("1.0-r"));
+		assertFalse(PackageVersion.isValid("1.0_gamma"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void refusesToCompareInvalidVersions () {
+		PackageVersion.compare("1.0", "1.0-r");
+	}
+
+	@Test
+	public void stripsRevisions () {
+		assertEquals("1.0_p1", PackageVersion.stripRevision("1.0_p1-r2"));
+		assertEquals("1.0", PackageVersion.stripRevision("1.0"));
+	}
+
+}
@@ -0,0 +1,152 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ParsedFileStoreTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void entriesAreUsedAndKeepTheByteCount () throws IOException {
+		ParsedFileStore store = new ParsedFileStore(this.folder.newFolder());
+		File source = this.writeOldFile("USE=\"a b\"\n");
+		ProfileFile file = ParsedFileStoreTest.makeDefaults(source);
+		this.check(file, store.parse(file, source.getCanonicalPath(), new SymbolTable(), new Diagnostics(System.err)));
+		this.check(file, store.parse(file, source.getCanonicalPath(), new SymbolTable(), new Diagnostics(System.err)));
+	}
+
+	@Test
+	public void garbageLengthsFallBackToParsing () throws IOException {
+		this.checkCorrupted(0, 0x7fffffff);
+		this.checkCorrupted(0, -1);
+	}
+
+	@Test
+	public void unknownStatusesFallBackToParsing () throws IOException {
+		this.checkCorrupted(-12, 42); // the status, before the byte count
+	}
+
+	/**
+	 * Stores a file, writes value over the int at offset from the line count
+	 * in its entry, and checks the next parse ignores the entry and replaces it.
+	 */
+	private void checkCorrupted (int offset, int value) throws IOException {
+		File directory = this.folder.newFolder();
+		ParsedFileStore store = new ParsedFileStore(directory);
+		File source = this.writeOldFile("USE=\"a b\"\n");
+		ProfileFile file = ParsedFileStoreTest.makeDefaults(source);
+		Diagnostics diagnostics = new Diagnostics(System.err);
+		store.parse(file, source.getCanonicalPath(), new SymbolTable(), diagnostics);
+
+		File[] entries = directory.listFiles();
+		assertEquals(1, entries.length);
+		long position = ParsedFileStoreTest.lineCountOffset(entries[0]) + offset;
+		RandomAccessFile entry = new RandomAccessFile(entries[0], "rw");
+		int original;
+		try {
+			entry.seek(position);
+			original = entry.readInt();
+			entry.seek(position);
+			entry.writeInt(value);
+		} finally {
+			entry.close();
+		}
+
+		this.check(file, store.parse(file, source.getCanonicalPath(), new SymbolTable(), diagnostics));
+		entry = new RandomAccessFile(entries[0], "r");
+		try {
+			entry.seek(position);
+			assertEquals(original, entry.readInt()); // stored again
+		} finally {
+			entry.close();
+		}
+	}
+
+	private void check (ProfileFile file, ParsedProfileFile parsed) {
+		assertEquals(ParsedProfileFile.STATUS_FOUND, parsed.getStatus());
+		assertEquals(new File(file.getPath()).length(), parsed.getByteCount());
+		assertEquals(1, parsed.getLineCount());
+	}
+
+	/**
+	 * Skips the header: magic, version, path, signature, size and modification
+	 * time, then the status and byte count.
+	 */
+	private static long lineCountOffset (File entry) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(entry));
+		try {
+			long offset = 8;
+			in.skipBytes(8);
+			for (int s = 0; s < 2; s++) {
+				int length = in.readInt();
+				in.skipBytes(length);
+				offset += 4 + length;
+			}
+			return offset + 16 + 12;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static ProfileFile makeDefaults (File source) {
+		return Profile.createFiles(source.getParent(), false, false, "")[1][1];
+	}
+
+	/**
+	 * A make.defaults old enough that the store keeps it.
+	 */
+	private File writeOldFile (String text) throws IOException {
+		File source = new File(this.folder.newFolder(), "make.defaults");
+		FileWriter writer = new FileWriter(source);
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+		source.setLastModified(System.currentTimeMillis() - 60000);
+		return source;
+	}
+
+}
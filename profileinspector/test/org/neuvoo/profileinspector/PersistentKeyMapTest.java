@@ -0,0 +1,166 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Vector;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class PersistentKeyMapTest {
+
+	@Test
+	public void leavesEarlierVersionsAsTheyWere () {
+		int[] one = { 1 };
+		int[] two = { 2 };
+		PersistentKeyMap empty = PersistentKeyMap.EMPTY;
+		PersistentKeyMap first = empty.with(5, one);
+		PersistentKeyMap second = first.with(5, two).with(7, one);
+
+		assertEquals(0, empty.size());
+		assertNull(empty.get(5));
+		assertEquals(1, first.size());
+		assertSame(one, first.get(5));
+		assertFalse(first.containsKey(7));
+		assertEquals(2, second.size());
+		assertSame(two, second.get(5));
+		assertSame(one, second.get(7));
+	}
+
+	@Test
+	public void returnsItselfWhenNothingChanges () {
+		int[] values = { 3, 4 };
+		PersistentKeyMap map = PersistentKeyMap.EMPTY.with(1, values);
+		assertSame(map, map.with(1, values));
+	}
+
+	@Test
+	public void keepsTheOrderKeysWereFirstSet () {
+		PersistentKeyMap map = PersistentKeyMap.EMPTY.with(40000, new int[] { 1 }).with(3, new int[] { 2 }).with(1025, new int[] { 3 });
+		map = map.with(40000, new int[] { 4 }); // keeps its place
+		assertArrayEquals(new int[] { 40000, 3, 1025 }, PersistentKeyMapTest.keys(map));
+		assertEquals(40000, map.getKeyAt(0));
+		assertEquals(1025, map.getKeyAt(2));
+		assertArrayEquals(new int[] { 4 }, map.get(40000));
+	}
+
+	@Test
+	public void growsForLargeIdsWithoutLosingSmallOnes () {
+		PersistentKeyMap small = PersistentKeyMap.EMPTY.with(0, new int[] { 0 }).with(31, new int[] { 31 });
+		PersistentKeyMap large = small.with(Integer.MAX_VALUE, new int[] { 1 }).with(32, new int[] { 32 });
+		assertArrayEquals(new int[] { 31 }, large.get(31));
+		assertArrayEquals(new int[] { 1 }, large.get(Integer.MAX_VALUE));
+		assertNull(small.get(32));
+		assertNull(small.get(Integer.MAX_VALUE)); // past anything the smaller trie has room for
+		assertNull(large.get(33));
+	}
+
+	@Test
+	public void answersAsAReadOnlyMap () {
+		PersistentKeyMap map = PersistentKeyMap.EMPTY.with(2, new int[] { 9 });
+		assertTrue(map.containsKey(Integer.valueOf(2)));
+		assertFalse(map.containsKey("2"));
+		assertNull(map.get("2"));
+		Iterator<Map.Entry<Integer,int[]>> entries = map.entrySet().iterator();
+		try {
+			entries.next();
+			entries.remove();
+			fail("removed through the iterator");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void agreesWithALinkedHashMapAcrossVersions () {
+		Random random = new Random(1);
+		Vector<PersistentKeyMap> versions = new Vector<PersistentKeyMap>();
+		Vector<LinkedHashMap<Integer,int[]>> expected = new Vector<LinkedHashMap<Integer,int[]>>();
+		versions.add(PersistentKeyMap.EMPTY);
+		expected.add(new LinkedHashMap<Integer,int[]>());
+		for (int step = 0; step < 2000; step++) {
+			int from = random.nextInt(versions.size()); // branch off any earlier version, as snapshots do
+			int key = random.nextBoolean() ? random.nextInt(64) : random.nextInt(1 << 20);
+			int[] values = { step };
+			versions.add(versions.get(from).with(key, values));
+			LinkedHashMap<Integer,int[]> copy = new LinkedHashMap<Integer,int[]>(expected.get(from));
+			copy.put(key, values);
+			expected.add(copy);
+		}
+		for (int v = 0; v < versions.size(); v++) {
+			PersistentKeyMap map = versions.get(v);
+			LinkedHashMap<Integer,int[]> reference = expected.get(v);
+			assertEquals(reference.size(), map.size());
+			int k = 0;
+			for (Map.Entry<Integer,int[]> entry: reference.entrySet()) {
+				assertEquals(entry.getKey().intValue(), map.getKeyAt(k++));
+				assertSame(entry.getValue(), map.get(entry.getKey().intValue()));
+			}
+		}
+	}
+
+	@Test
+	public void snapshotsOfAnEnvironmentDoNotSeeEachOthersWrites () {
+		ProfileEnvironment environment = new ProfileEnvironment(new SymbolTable());
+		environment.setVars("make.defaults", "USE", PersistentKeyMapTest.values("a"));
+		ProfileEnvironment snapshot = environment.snapshot();
+		environment.setVars("make.defaults", "USE", PersistentKeyMapTest.values("b"));
+		snapshot.setVars("package.mask", "list", PersistentKeyMapTest.values("cat/pkg"));
+
+		assertEquals(PersistentKeyMapTest.values("b"), environment.getVars("make.defaults", "USE"));
+		assertEquals(PersistentKeyMapTest.values("a"), snapshot.getVars("make.defaults", "USE"));
+		assertTrue(environment.getVars("package.mask", "list").isEmpty());
+		assertEquals(PersistentKeyMapTest.values("cat/pkg"), snapshot.getVars("package.mask", "list"));
+	}
+
+	private static Vector<String> values (String... values) {
+		Vector<String> vector = new Vector<String>();
+		for (String value: values) {
+			vector.add(value);
+		}
+		return vector;
+	}
+
+	private static int[] keys (PersistentKeyMap map) {
+		int[] keys = new int[map.size()];
+		int k = 0;
+		for (Map.Entry<Integer,int[]> entry: map.entrySet()) {
+			keys[k++] = entry.getKey();
+		}
+		return keys;
+	}
+
+}
@@ -0,0 +1,120 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ProfileCycleTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void reportsTwoProfilesInheritingFromEachOther () throws IOException {
+		this.writeProfile("a", "../b");
+		this.writeProfile("b", "../a");
+		String message = this.resolveFailure("a");
+		assertTrue(message, message.startsWith("Found a cycle"));
+		assertTrue(message, message.endsWith("/a -> " + this.path("a") + "/../b -> " + this.path("a") + "/../b/../a"));
+	}
+
+	@Test
+	public void reportsAProfileInheritingFromItself () throws IOException {
+		this.writeProfile("a", ".");
+		String message = this.resolveFailure("a");
+		assertTrue(message, message.endsWith(this.path("a") + " -> " + this.path("a") + "/."));
+	}
+
+	@Test
+	public void leavesProfilesBelowTheCycleOutOfIt () throws IOException {
+		this.writeProfile("a", "../b");
+		this.writeProfile("b", "../a");
+		this.writeProfile("c", "../a");
+		String message = this.resolveFailure("c");
+		assertTrue(message, message.endsWith(": " + this.path("c") + "/../a -> " + this.path("c") + "/../a/../b -> " + this.path("c") + "/../a/../b/../a"));
+	}
+
+	@Test
+	public void resolvesAParentReachedThroughTwoChildren () throws IOException {
+		this.writeProfile("base", null);
+		this.writeProfile("x", "../base");
+		this.writeProfile("y", "../base");
+		this.writeProfile("leaf", "../x\n../y");
+		Profile profile = new Profile(this.path("leaf"), new ProfileEnvironment(new SymbolTable()), false, false, "");
+		assertEquals(2, profile.getParents().size());
+		assertEquals("leaf", profile.getEnvironment().getVars("make.defaults", "NAME").lastElement());
+	}
+
+	private String resolveFailure (String name) throws IOException {
+		try {
+			new Profile(this.path(name), new ProfileEnvironment(new SymbolTable()), false, false, "");
+		} catch (IllegalArgumentException e) {
+			return e.getMessage();
+		}
+		fail(name + " resolved");
+		return null;
+	}
+
+	private String path (String name) {
+		return new File(this.folder.getRoot(), name).getPath();
+	}
+
+	/**
+	 * A profile called name, inheriting from parents (one per line) unless that
+	 * is null, and setting NAME to its name.
+	 */
+	private void writeProfile (String name, String parents) throws IOException {
+		File profile = new File(this.folder.getRoot(), name);
+		assertTrue(profile.mkdir());
+		if (parents != null) {
+			ProfileCycleTest.write(new File(profile, "parent"), parents + "\n");
+		}
+		ProfileCycleTest.write(new File(profile, "make.defaults"), "NAME=\"" + name + "\"\n");
+	}
+
+	private static void write (File file, String text) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(text);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
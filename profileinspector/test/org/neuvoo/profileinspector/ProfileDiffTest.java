@@ -0,0 +1,119 @@
+/* Copyright (c) 2010, Jacob Godserv
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions
+ * are met:
+ *     * Redistributions of source code must retain the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer.
+ *     * Redistributions in binary form must reproduce the above
+ *       copyright notice, this list of conditions and the following
+ *       disclaimer in the documentation and/or other materials
+ *       provided with the distribution.
+ *     * Neither the name of the author nor the names of its
+ *       contributors may be used to endorse or promote products
+ *       derived from this software without specific prior written
+ *       permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY Jacob Godserv "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL Jacob Godserv BE LIABLE FOR ANY
+ * DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE
+ * GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS
+ * SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.neuvoo.profileinspector;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import static org.junit.Assert.*;
+
+public class ProfileDiffTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writesNothingForEqualProfiles () throws IOException {
+		assertEquals("", this.diff("a b c", "a b c"));
+	}
+
+	@Test
+	public void reportsAddedAndRemovedValuesWithoutMoves () throws IOException {
+		assertEquals("+ make.defaults FOO d\n- make.defaults FOO b\n", this.diff("a b c", "a c d"));
+	}
+
+	@Test
+	public void movesOnlyTheValueThatWasRotated () throws IOException {
+		assertEquals("+ make.defaults FOO x\n~ make.defaults FOO a\n", this.diff("a b c d e", "b c d e a x"));
+	}
+
+	@Test
+	public void keepsTheLongestRunInOrder () throws IOException {
+		assertEquals(2, ProfileDiffTest.count(this.diff("a b c", "c b a"), "~ "));
+		assertEquals(3, ProfileDiffTest.count(this.diff("a b c d e f", "d e f a b c"), "~ "));
+		assertEquals(2, ProfileDiffTest.count(this.diff("a b c d e f", "a c b d f e"), "~ "));
+	}
+
+	@Test
+	public void reportsKeysOnlyOneProfileHas () throws IOException {
+		assertEquals("- make.defaults FOO a\n", this.diff("a", null));
+		assertEquals("+ make.defaults FOO a\n+ make.defaults FOO b\n", this.diff(null, "a b"));
+	}
+
+	/**
+	 * What ProfileDiff writes going from a profile whose make.defaults sets FOO
+	 * to before, to one that sets it to after; null leaves FOO out.
+	 */
+	private String diff (String before, String after) throws IOException {
+		File beforeProfile = this.writeProfile(before);
+		File afterProfile = this.writeProfile(after);
+		ParsedFileCache parsedFiles = new ParsedFileCache(null, false, false, "");
+		Profile beforeResolved = new Profile(beforeProfile.getPath(), new ProfileEnvironment(parsedFiles.getSymbols()), false, false, "", parsedFiles);
+		Profile afterResolved = new Profile(afterProfile.getPath(), new ProfileEnvironment(parsedFiles.getSymbols()), false, false, "", parsedFiles);
+
+		StringWriter written = new StringWriter();
+		int changes = new ProfileDiff(new PrintWriter(written), false).compare(beforeResolved, afterResolved);
+		assertEquals(ProfileDiffTest.count(written.toString(), ""), changes);
+		return written.toString();
+	}
+
+	private File writeProfile (String foo) throws IOException {
+		File profile = this.folder.newFolder();
+		FileWriter makeDefaults = new FileWriter(new File(profile, "make.defaults"));
+		try {
+			makeDefaults.write("BAR=\"unchanged\"\n");
+			if (foo != null) {
+				makeDefaults.write("FOO=\"" + foo + "\"\n");
+			}
+		} finally {
+			makeDefaults.close();
+		}
+		return profile;
+	}
+
+	private static int count (String lines, String prefix) {
+		int count = 0;
+		for (String line: lines.split("\n")) {
+			if (!line.equals("") && line.startsWith(prefix)) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}